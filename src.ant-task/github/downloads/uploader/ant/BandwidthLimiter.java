@@ -0,0 +1,92 @@
+package github.downloads.uploader.ant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM wide bandwidth limits shared by all uploads.
+ * <p>
+ * One bucket limits the total upload rate of the JVM, and one bucket per
+ * repository limits uploads to that repository, so concurrently running
+ * builds publish at a predictable rate without saturating the uplink.
+ */
+public class BandwidthLimiter {
+
+	private static final TokenBucket global = new TokenBucket(0);
+
+	private static final Map<String, TokenBucket> repositories = new HashMap<String, TokenBucket>();
+
+	private static long repositoryRate;
+
+	/**
+	 * @return bucket shared by all uploads
+	 */
+	public static TokenBucket getGlobal() {
+		return global;
+	}
+
+	/**
+	 * @return bytes per second for each repository, zero or less if unlimited
+	 */
+	public static synchronized long getRepositoryRate() {
+		return repositoryRate;
+	}
+
+	/**
+	 * Get bucket shared by all uploads to given repository
+	 *
+	 * @param repositoryId
+	 * @return non-null bucket
+	 */
+	public static synchronized TokenBucket getRepository(String repositoryId) {
+		TokenBucket bucket = repositories.get(repositoryId);
+		if (bucket == null) {
+			bucket = new TokenBucket(repositoryRate);
+			repositories.put(repositoryId, bucket);
+		}
+		return bucket;
+	}
+
+	/**
+	 * Configure JVM wide limits
+	 *
+	 * @param globalRate
+	 *            bytes per second for all uploads, zero or less for unlimited
+	 * @param repositoryRate
+	 *            bytes per second for each repository, zero or less for
+	 *            unlimited
+	 */
+	public static synchronized void configure(long globalRate,
+			long repositoryRate) {
+		global.setRate(globalRate);
+		BandwidthLimiter.repositoryRate = repositoryRate;
+		for (TokenBucket bucket : repositories.values())
+			bucket.setRate(repositoryRate);
+	}
+
+	/**
+	 * Get buckets limiting uploads to given repository
+	 *
+	 * @param repositoryId
+	 * @param narrowing
+	 *            further buckets of the caller, such as the limits of a
+	 *            single task, that only ever lower the JVM wide limits
+	 * @return non-null but possibly empty array of limiting buckets
+	 */
+	public static TokenBucket[] getBuckets(String repositoryId,
+			TokenBucket... narrowing) {
+		List<TokenBucket> buckets = new ArrayList<TokenBucket>(
+				2 + narrowing.length);
+		if (global.isLimited())
+			buckets.add(global);
+		TokenBucket repository = getRepository(repositoryId);
+		if (repository.isLimited())
+			buckets.add(repository);
+		for (TokenBucket bucket : narrowing)
+			if (bucket != null && bucket.isLimited())
+				buckets.add(bucket);
+		return buckets.toArray(new TokenBucket[buckets.size()]);
+	}
+}
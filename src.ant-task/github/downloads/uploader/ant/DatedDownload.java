@@ -0,0 +1,43 @@
+package github.downloads.uploader.ant;
+
+import java.util.Date;
+
+import org.eclipse.egit.github.core.Download;
+
+/**
+ * Download with the creation time reported by the API, which the stock model
+ * does not map
+ */
+public class DatedDownload extends Download {
+
+	private static final long serialVersionUID = 1L;
+
+	private Date createdAt;
+
+	/**
+	 * @return creation time, null if not reported
+	 */
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	/**
+	 * @param createdAt
+	 * @return this download
+	 */
+	public DatedDownload setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+		return this;
+	}
+
+	/**
+	 * Get creation time of given download
+	 *
+	 * @param download
+	 * @return creation time, null if unknown
+	 */
+	public static Date getCreatedAt(Download download) {
+		return download instanceof DatedDownload ? ((DatedDownload) download)
+				.getCreatedAt() : null;
+	}
+}
@@ -0,0 +1,129 @@
+package github.downloads.uploader.ant;
+
+import java.util.Map;
+
+import org.eclipse.egit.github.core.RepositoryId;
+import org.eclipse.egit.github.core.service.DownloadService;
+
+/**
+ * Repository files are published to, declared as a nested destination element
+ * of the uploader task. Attributes not set are taken from the task.
+ */
+public class Destination {
+
+	private String host;
+
+	private String owner;
+
+	private String repository;
+
+	private String username;
+
+	private String password;
+
+	private String oauth2Token;
+
+	private String server;
+
+	RepositoryId repositoryId;
+
+	DownloadService service;
+
+	Map<String, Integer> existing;
+
+	DigestStore digests;
+
+	/**
+	 * @return repository id, available once the task has resolved this
+	 *         destination
+	 */
+	public RepositoryId getRepositoryId() {
+		return repositoryId;
+	}
+
+	/**
+	 * @return service, available once the task has made a request
+	 */
+	public DownloadService getService() {
+		return service;
+	}
+
+	/**
+	 * @return destination with the attributes of this one and none of the
+	 *         state of a run
+	 */
+	Destination copy() {
+		Destination copy = new Destination();
+		copy.host = host;
+		copy.owner = owner;
+		copy.repository = repository;
+		copy.username = username;
+		copy.password = password;
+		copy.oauth2Token = oauth2Token;
+		copy.server = server;
+		return copy;
+	}
+
+	/**
+	 * @return key identifying this destination across hosts
+	 */
+	public String getKey() {
+		return (host != null ? host : "") + "/" + repositoryId.generateId();
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+
+	public String getRepository() {
+		return repository;
+	}
+
+	public void setRepository(String repository) {
+		this.repository = repository;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public String getOAuth2Token() {
+		return oauth2Token;
+	}
+
+	public void setOAuth2Token(String oauth2Token) {
+		this.oauth2Token = oauth2Token;
+	}
+
+	public String getServer() {
+		return server;
+	}
+
+	public void setServer(String server) {
+		this.server = server;
+	}
+}
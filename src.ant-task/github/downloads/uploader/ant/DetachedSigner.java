@@ -0,0 +1,325 @@
+package github.downloads.uploader.ant;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.RSAKey;
+import java.util.Enumeration;
+
+/**
+ * Creates ASCII armored OpenPGP detached signatures of content as it streams
+ * by, so a file is hashed while it is read for upload instead of in a second
+ * pass.
+ * <p>
+ * The RSA signing key is read from a local Java key store, for example a
+ * PKCS12 export of the OpenPGP key, and the signatures name the given OpenPGP
+ * key id as issuer so gpg verifies them with the matching public key. The
+ * final RSA operation runs on the thread finishing each signature, so files
+ * uploaded on different threads are signed on different cores.
+ */
+public class DetachedSigner {
+
+	private static final int HASH_SHA256 = 8;
+
+	private static final int ALGORITHM_RSA = 1;
+
+	/**
+	 * DER prefix of a SHA-256 DigestInfo, followed by the 32 byte hash
+	 */
+	private static final byte[] SHA256_INFO = { 0x30, 0x31, 0x30, 0x0d, 0x06,
+			0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02, 0x01,
+			0x05, 0x00, 0x04, 0x20 };
+
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.toCharArray();
+
+	/**
+	 * Signature of one stream
+	 */
+	public class Signing {
+
+		private final MessageDigest digest = createSha256();
+
+		private long length;
+
+		/**
+		 * Wrap stream so its content is hashed as it is read
+		 *
+		 * @param in
+		 * @return hashing stream
+		 */
+		public InputStream wrap(InputStream in) {
+			return new DigestInputStream(in, digest) {
+
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b != -1)
+						length++;
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int read = super.read(b, off, len);
+					if (read > 0)
+						length += read;
+					return read;
+				}
+			};
+		}
+
+		/**
+		 * @return bytes hashed so far
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Finish signature of the content read
+		 *
+		 * @param created
+		 *            signature creation time in milliseconds
+		 * @return armored signature
+		 * @throws GeneralSecurityException
+		 */
+		public byte[] finish(long created) throws GeneralSecurityException {
+			return sign(digest, 0x00, created);
+		}
+	}
+
+	private final PrivateKey key;
+
+	private final long keyId;
+
+	/**
+	 * Create signer
+	 *
+	 * @param key
+	 *            RSA private key
+	 * @param keyId
+	 *            OpenPGP key id of the key
+	 */
+	public DetachedSigner(PrivateKey key, long keyId) {
+		if (!(key instanceof RSAKey))
+			throw new IllegalArgumentException(
+					"Only RSA keys are supported for signing");
+		this.key = key;
+		this.keyId = keyId;
+	}
+
+	/**
+	 * Load signer from key store
+	 *
+	 * @param keyStore
+	 * @param type
+	 *            key store type, PKCS12 or JKS
+	 * @param storePassword
+	 * @param alias
+	 *            alias of the key, the first key if null
+	 * @param keyPassword
+	 *            password of the key, the store password if null
+	 * @param keyId
+	 *            OpenPGP key id as 16 hex digits
+	 * @return signer
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public static DetachedSigner load(File keyStore, String type,
+			String storePassword, String alias, String keyPassword,
+			String keyId) throws IOException, GeneralSecurityException {
+		char[] password = storePassword != null ? storePassword.toCharArray()
+				: null;
+		KeyStore store = KeyStore.getInstance(type);
+		InputStream in = new FileInputStream(keyStore);
+		try {
+			store.load(in, password);
+		} finally {
+			in.close();
+		}
+		if (alias == null)
+			for (Enumeration<String> aliases = store.aliases(); aliases
+					.hasMoreElements() && alias == null;) {
+				String candidate = aliases.nextElement();
+				if (store.isKeyEntry(candidate))
+					alias = candidate;
+			}
+		if (alias == null)
+			throw new GeneralSecurityException("No key in " + keyStore);
+		Key key = store.getKey(alias, keyPassword != null ? keyPassword
+				.toCharArray() : password);
+		if (!(key instanceof PrivateKey))
+			throw new GeneralSecurityException("No private key " + alias
+					+ " in " + keyStore);
+		String hex = keyId.trim();
+		if (hex.startsWith("0x") || hex.startsWith("0X"))
+			hex = hex.substring(2);
+		if (!hex.matches("[0-9A-Fa-f]{16}"))
+			throw new IllegalArgumentException(
+					"Key id must be 16 hex digits: " + keyId);
+		return new DetachedSigner((PrivateKey) key, new BigInteger(hex, 16)
+				.longValue());
+	}
+
+	/**
+	 * Start signature of a stream
+	 *
+	 * @return signing
+	 */
+	public Signing start() {
+		return new Signing();
+	}
+
+	private static MessageDigest createSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Finish OpenPGP version 4 signature over the content hashed by given
+	 * digest
+	 *
+	 * @param digest
+	 *            hash of the signed content, consumed
+	 * @param type
+	 *            signature type
+	 * @param created
+	 * @return armored signature
+	 * @throws GeneralSecurityException
+	 */
+	byte[] sign(MessageDigest digest, int type, long created)
+			throws GeneralSecurityException {
+		ByteArrayOutputStream hashed = new ByteArrayOutputStream();
+		hashed.write(4);
+		hashed.write(type);
+		hashed.write(ALGORITHM_RSA);
+		hashed.write(HASH_SHA256);
+		// Hashed subpackets: signature creation time
+		writeShort(hashed, 6);
+		hashed.write(5);
+		hashed.write(2);
+		writeInt(hashed, (int) (created / 1000));
+		byte[] header = hashed.toByteArray();
+
+		digest.update(header);
+		digest.update(new byte[] { 4, (byte) 0xff });
+		byte[] length = new byte[4];
+		for (int i = 0; i < 4; i++)
+			length[i] = (byte) (header.length >>> (24 - 8 * i));
+		digest.update(length);
+		byte[] hash = digest.digest();
+
+		Signature rsa = Signature.getInstance("NONEwithRSA");
+		rsa.initSign(key);
+		rsa.update(SHA256_INFO);
+		rsa.update(hash);
+		byte[] value = rsa.sign();
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write(header, 0, header.length);
+		// Unhashed subpackets: issuer key id
+		writeShort(body, 10);
+		body.write(9);
+		body.write(16);
+		writeInt(body, (int) (keyId >>> 32));
+		writeInt(body, (int) keyId);
+		body.write(hash[0]);
+		body.write(hash[1]);
+		BigInteger mpi = new BigInteger(1, value);
+		writeShort(body, mpi.bitLength());
+		byte[] magnitude = mpi.toByteArray();
+		int skip = magnitude[0] == 0 ? 1 : 0;
+		body.write(magnitude, skip, magnitude.length - skip);
+
+		ByteArrayOutputStream packet = new ByteArrayOutputStream();
+		packet.write(0xc2);
+		writeLength(packet, body.size());
+		byte[] content = body.toByteArray();
+		packet.write(content, 0, content.length);
+		return armor(packet.toByteArray());
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		writeShort(out, value >>> 16);
+		writeShort(out, value);
+	}
+
+	private static void writeLength(ByteArrayOutputStream out, int length) {
+		if (length < 192)
+			out.write(length);
+		else if (length < 8384) {
+			out.write(((length - 192) >>> 8) + 192);
+			out.write(length - 192);
+		} else {
+			out.write(0xff);
+			writeInt(out, length);
+		}
+	}
+
+	private static String base64(byte[] data) {
+		StringBuilder out = new StringBuilder((data.length + 2) / 3 * 4);
+		for (int i = 0; i < data.length; i += 3) {
+			int b = (data[i] & 0xff) << 16;
+			if (i + 1 < data.length)
+				b |= (data[i + 1] & 0xff) << 8;
+			if (i + 2 < data.length)
+				b |= data[i + 2] & 0xff;
+			out.append(BASE64[b >>> 18]).append(BASE64[(b >>> 12) & 0x3f]);
+			out.append(i + 1 < data.length ? BASE64[(b >>> 6) & 0x3f] : '=');
+			out.append(i + 2 < data.length ? BASE64[b & 0x3f] : '=');
+		}
+		return out.toString();
+	}
+
+	private static int crc24(byte[] data) {
+		int crc = 0xb704ce;
+		for (byte b : data) {
+			crc ^= (b & 0xff) << 16;
+			for (int i = 0; i < 8; i++) {
+				crc <<= 1;
+				if ((crc & 0x1000000) != 0)
+					crc ^= 0x1864cfb;
+			}
+		}
+		return crc & 0xffffff;
+	}
+
+	private static byte[] armor(byte[] packet) {
+		StringBuilder armored = new StringBuilder(
+				"-----BEGIN PGP SIGNATURE-----\n\n");
+		String encoded = base64(packet);
+		for (int i = 0; i < encoded.length(); i += 64)
+			armored.append(encoded, i, Math.min(encoded.length(), i + 64))
+					.append('\n');
+		int crc = crc24(packet);
+		armored.append('=')
+				.append(base64(new byte[] { (byte) (crc >>> 16),
+						(byte) (crc >>> 8), (byte) crc }))
+				.append("\n-----END PGP SIGNATURE-----\n");
+		try {
+			return armored.toString().getBytes("US-ASCII");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
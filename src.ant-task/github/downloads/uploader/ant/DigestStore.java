@@ -0,0 +1,120 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Record of the downloads uploaded to one repository: id, size and MD5
+ * digest of the content by download name.
+ * <p>
+ * The downloads API reports no digest, so an upload can be skipped only when
+ * the remote download still has the id recorded when it was uploaded and the
+ * local file has the recorded size and digest.
+ */
+public class DigestStore {
+
+	private final File file;
+
+	private final Properties records = new Properties();
+
+	private boolean modified;
+
+	/**
+	 * Load record stored in given file
+	 *
+	 * @param file
+	 */
+	public DigestStore(File file) {
+		this.file = file;
+		if (file.isFile())
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					records.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// Unreadable record only costs uploading everything again
+				records.clear();
+			}
+	}
+
+	/**
+	 * Get file recording the downloads of given destination
+	 *
+	 * @param dir
+	 * @param key
+	 *            destination key
+	 * @return record file
+	 */
+	public static File getFile(File dir, String key) {
+		return new File(dir, key.replaceAll("[^A-Za-z0-9._-]", "_")
+				+ ".properties");
+	}
+
+	/**
+	 * Is download with given name unchanged?
+	 *
+	 * @param name
+	 * @param remoteId
+	 *            id of existing remote download, may be null
+	 * @param size
+	 *            local size
+	 * @param digest
+	 *            local digest
+	 * @return true if the remote download was uploaded from identical content
+	 */
+	public synchronized boolean isUnchanged(String name, Integer remoteId,
+			long size, String digest) {
+		if (remoteId == null || digest == null)
+			return false;
+		return (remoteId + " " + size + " " + digest).equals(records
+				.getProperty(name));
+	}
+
+	/**
+	 * Record uploaded download
+	 *
+	 * @param name
+	 * @param id
+	 * @param size
+	 * @param digest
+	 */
+	public synchronized void record(String name, int id, long size,
+			String digest) {
+		records.setProperty(name, id + " " + size + " " + digest);
+		modified = true;
+	}
+
+	/**
+	 * Save record if it changed
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		if (!modified)
+			return;
+		File dir = file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create directory " + dir);
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			records.store(out, "Downloads uploaded: id size md5");
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("Could not write " + file);
+		}
+		modified = false;
+	}
+}
@@ -0,0 +1,74 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Digest utilities
+ */
+public class DigestUtils {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Create MD5 digest
+	 *
+	 * @return non-null digest
+	 */
+	public static MessageDigest createMd5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Format digest as lower case hex string
+	 *
+	 * @param digest
+	 * @return hex string
+	 */
+	public static String toHex(byte[] digest) {
+		char[] hex = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Get MD5 digest of stream content, closing the stream
+	 *
+	 * @param in
+	 * @return lower case hex digest
+	 * @throws IOException
+	 */
+	public static String md5(InputStream in) throws IOException {
+		MessageDigest digest = createMd5();
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			for (int read; (read = in.read(buffer)) != -1;)
+				digest.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Get MD5 digest of file content
+	 *
+	 * @param file
+	 * @return lower case hex digest
+	 * @throws IOException
+	 */
+	public static String md5(File file) throws IOException {
+		return md5(new FileInputStream(file));
+	}
+}
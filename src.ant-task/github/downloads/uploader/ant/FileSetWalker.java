@@ -0,0 +1,243 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.resources.FileResource;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+/**
+ * Lazy walk over the files of Ant {@link FileSet}s.
+ * <p>
+ * Iterating a file set through Ant scans the whole tree up front and keeps
+ * the relative names of all included, excluded and not included files. This
+ * walk matches the include and exclude patterns of the file set while it
+ * descends instead, so it only holds the listings of the directories on the
+ * current path. Files come in the order of each directory's sorted listing.
+ * File sets with selectors, or not following symbolic links, are iterated
+ * through Ant.
+ */
+public class FileSetWalker implements Iterator<File> {
+
+	/**
+	 * Directory being listed
+	 */
+	private static class Level {
+
+		final File dir;
+
+		final String path;
+
+		final String canonical;
+
+		final String[] names;
+
+		int next;
+
+		Level(File dir, String path, String canonical, String[] names) {
+			this.dir = dir;
+			this.path = path;
+			this.canonical = canonical;
+			this.names = names;
+		}
+	}
+
+	/**
+	 * Directory scanner that is only set up, to read the patterns of a file
+	 * set normalized like for a scan
+	 */
+	private static class Patterns extends DirectoryScanner {
+
+		String[] getIncludes() {
+			return includes;
+		}
+
+		String[] getExcludes() {
+			return excludes;
+		}
+	}
+
+	/**
+	 * Get files of given file sets, walked lazily each time they are iterated
+	 *
+	 * @param filesets
+	 * @param project
+	 * @return files
+	 */
+	public static Iterable<File> iterate(final List<FileSet> filesets,
+			final Project project) {
+		return new Iterable<File>() {
+
+			public Iterator<File> iterator() {
+				return new FileSetWalker(filesets.iterator(), project);
+			}
+		};
+	}
+
+	/**
+	 * Walk files of given file set
+	 *
+	 * @param fileset
+	 * @param project
+	 * @return files
+	 */
+	public static Iterator<File> iterate(FileSet fileset, Project project) {
+		return new FileSetWalker(Collections.singletonList(fileset).iterator(),
+				project);
+	}
+
+	private final Iterator<FileSet> sets;
+
+	private final Project project;
+
+	private String[] includes;
+
+	private String[] excludes;
+
+	private boolean caseSensitive;
+
+	private final LinkedList<Level> stack = new LinkedList<Level>();
+
+	/**
+	 * Files of a file set iterated through Ant
+	 */
+	private Iterator<?> resources;
+
+	private File next;
+
+	private FileSetWalker(Iterator<FileSet> sets, Project project) {
+		this.sets = sets;
+		this.project = project;
+		next = advance();
+	}
+
+	/**
+	 * Start walking given file set
+	 *
+	 * @param fileset
+	 */
+	private void start(FileSet fileset) {
+		if (fileset.hasSelectors() || !fileset.isFollowSymlinks()) {
+			resources = fileset.iterator();
+			return;
+		}
+		Patterns patterns = new Patterns();
+		fileset.setupDirectoryScanner(patterns, project);
+		File basedir = patterns.getBasedir();
+		if (!basedir.isDirectory()) {
+			if (!basedir.exists() && !fileset.getErrorOnMissingDir())
+				return;
+			throw new BuildException(basedir.getAbsolutePath()
+					+ (basedir.exists() ? " is not a directory."
+							: " does not exist."));
+		}
+		includes = patterns.getIncludes() != null ? patterns.getIncludes()
+				: new String[] { SelectorUtils.DEEP_TREE_MATCH };
+		excludes = patterns.getExcludes() != null ? patterns.getExcludes()
+				: new String[0];
+		caseSensitive = patterns.isCaseSensitive();
+		push(basedir, "");
+	}
+
+	private void push(File dir, String path) {
+		String canonical;
+		try {
+			canonical = dir.getCanonicalPath();
+		} catch (IOException e) {
+			canonical = dir.getAbsolutePath();
+		}
+		// Don't follow symbolic links back into the path being walked
+		for (Level level : stack)
+			if (level.canonical.equals(canonical))
+				return;
+		String[] names = dir.list();
+		if (names == null)
+			return;
+		Arrays.sort(names);
+		stack.add(new Level(dir, path, canonical, names));
+	}
+
+	private boolean matchesAny(String[] patterns, String path) {
+		for (String pattern : patterns)
+			if (SelectorUtils.matchPath(pattern, path, caseSensitive))
+				return true;
+		return false;
+	}
+
+	private boolean couldHoldIncluded(String path) {
+		for (String pattern : includes)
+			if (SelectorUtils.matchPatternStart(pattern, path, caseSensitive))
+				return true;
+		return false;
+	}
+
+	private boolean contentsExcluded(String path) {
+		String deep = File.separator + SelectorUtils.DEEP_TREE_MATCH;
+		for (String pattern : excludes)
+			if (pattern.endsWith(deep)
+					&& SelectorUtils.matchPath(pattern.substring(0,
+							pattern.length() - deep.length()), path,
+							caseSensitive))
+				return true;
+		return false;
+	}
+
+	private File advance() {
+		while (true) {
+			if (resources != null) {
+				if (resources.hasNext()) {
+					Object resource = resources.next();
+					return resource instanceof FileResource ? ((FileResource) resource)
+							.getFile() : (File) resource;
+				}
+				resources = null;
+			}
+			if (stack.isEmpty()) {
+				if (!sets.hasNext())
+					return null;
+				start(sets.next());
+				continue;
+			}
+			Level level = stack.getLast();
+			if (level.next == level.names.length) {
+				stack.removeLast();
+				continue;
+			}
+			String name = level.names[level.next++];
+			File file = new File(level.dir, name);
+			String path = level.path + name;
+			if (file.isDirectory()) {
+				if (couldHoldIncluded(path) && !contentsExcluded(path))
+					push(file, path + File.separator);
+			} else if (matchesAny(includes, path)
+					&& !matchesAny(excludes, path))
+				return file;
+		}
+	}
+
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	public File next() {
+		if (next == null)
+			throw new NoSuchElementException();
+		File file = next;
+		next = advance();
+		return file;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
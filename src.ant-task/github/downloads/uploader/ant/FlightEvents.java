@@ -0,0 +1,222 @@
+package github.downloads.uploader.ant;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events of uploader operations, carrying repository,
+ * download name and bytes with the duration recorded by the event.
+ * <p>
+ * The task targets Java versions without the jdk.jfr module, so event types
+ * are defined at runtime through jdk.jfr.EventFactory when the running JVM
+ * provides it, and only once the flight recorder has been started, as loading
+ * the recorder takes longer than a short run. Whether it has been started is
+ * checked at most once a second, so otherwise, and while no recording enables
+ * an event type, {@link #begin(int)} returns a shared no-op span after reading
+ * cached state, without locking or reflection.
+ */
+public class FlightEvents {
+
+	/**
+	 * Listing existing downloads
+	 */
+	public static final int LIST = 0;
+
+	/**
+	 * Deleting a download
+	 */
+	public static final int DELETE = 1;
+
+	/**
+	 * Creating a download and sending its content
+	 */
+	public static final int UPLOAD = 2;
+
+	/**
+	 * Waiting before retrying a failed upload
+	 */
+	public static final int RETRY = 3;
+
+	/**
+	 * Computing the digest of a file
+	 */
+	public static final int HASH = 4;
+
+	private static final String[][] TYPES = {
+			{ "List", "List Downloads" }, { "Delete", "Delete Download" },
+			{ "Upload", "Upload Download" }, { "Retry", "Retry Upload" },
+			{ "Hash", "Hash File" } };
+
+	/**
+	 * Operation being recorded
+	 */
+	public static class Span {
+
+		private final Object event;
+
+		Span(Object event) {
+			this.event = event;
+		}
+
+		/**
+		 * End operation and commit its event
+		 *
+		 * @param repository
+		 * @param name
+		 *            download or file name, may be null
+		 * @param bytes
+		 */
+		public void end(String repository, String name, long bytes) {
+			try {
+				set.invoke(event, 0, repository);
+				set.invoke(event, 1, name);
+				set.invoke(event, 2, bytes);
+				commit.invoke(event);
+			} catch (Exception e) {
+				// Recording is best effort
+			}
+		}
+	}
+
+	private static final Span NONE = new Span(null) {
+
+		@Override
+		public void end(String repository, String name, long bytes) {
+		}
+	};
+
+	private static final long CHECK_INTERVAL = 1000000000L;
+
+	private static volatile Object[] factories;
+
+	/**
+	 * Whether this JVM cannot record the events
+	 */
+	private static volatile boolean unavailable;
+
+	/**
+	 * Time in nanoseconds from which to check again for a started recorder
+	 */
+	private static volatile long nextCheck = System.nanoTime();
+
+	private static Object[] probes;
+
+	private static Method newEvent;
+
+	private static Method isEnabled;
+
+	private static Method begin;
+
+	private static Method set;
+
+	private static Method commit;
+
+	private static Method recorderInitialized;
+
+	static {
+		try {
+			recorderInitialized = Class.forName("jdk.jfr.FlightRecorder")
+					.getMethod("isInitialized");
+		} catch (Exception e) {
+			// No jdk.jfr in this JVM
+			recorderInitialized = null;
+			unavailable = true;
+		}
+	}
+
+	/**
+	 * Define event types if a recorder has been started since the last check
+	 *
+	 * @return whether event types are defined
+	 */
+	private static synchronized boolean define() {
+		if (factories != null)
+			return true;
+		if (unavailable || System.nanoTime() - nextCheck < 0)
+			return false;
+		nextCheck = System.nanoTime() + CHECK_INTERVAL;
+		try {
+			if ((Boolean) recorderInitialized.invoke(null))
+				init();
+		} catch (Exception e) {
+			unavailable = true;
+			factories = null;
+		}
+		return factories != null;
+	}
+
+	private static void init() throws Exception {
+		Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+		Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+		Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+		Class<?> event = Class.forName("jdk.jfr.Event");
+		Constructor<?> annotation = annotationElement.getConstructor(
+				Class.class, Object.class);
+		Constructor<?> field = valueDescriptor.getConstructor(Class.class,
+				String.class, List.class);
+		Method create = eventFactory.getMethod("create", List.class,
+				List.class);
+
+		List<Object> fields = new ArrayList<Object>();
+		fields.add(field.newInstance(String.class, "repository",
+				Collections.singletonList(annotation.newInstance(
+						Class.forName("jdk.jfr.Label"), "Repository"))));
+		fields.add(field.newInstance(String.class, "name",
+				Collections.singletonList(annotation.newInstance(
+						Class.forName("jdk.jfr.Label"), "Name"))));
+		fields.add(field.newInstance(long.class, "bytes", Arrays.asList(
+				annotation.newInstance(Class.forName("jdk.jfr.Label"),
+						"Bytes"),
+				annotation.newInstance(Class.forName("jdk.jfr.DataAmount"),
+						"BYTES"))));
+
+		Object[] created = new Object[TYPES.length];
+		Object[] createdProbes = new Object[TYPES.length];
+		newEvent = eventFactory.getMethod("newEvent");
+		for (int i = 0; i < TYPES.length; i++) {
+			List<Object> annotations = Arrays.asList(annotation.newInstance(
+					Class.forName("jdk.jfr.Name"), "github.downloads."
+							+ TYPES[i][0]), annotation.newInstance(
+					Class.forName("jdk.jfr.Label"), TYPES[i][1]), annotation
+					.newInstance(Class.forName("jdk.jfr.Category"),
+							new String[] { "GitHub Downloads" }));
+			created[i] = create.invoke(null, annotations, fields);
+			createdProbes[i] = newEvent.invoke(created[i]);
+		}
+		isEnabled = event.getMethod("isEnabled");
+		begin = event.getMethod("begin");
+		set = event.getMethod("set", int.class, Object.class);
+		commit = event.getMethod("commit");
+		probes = createdProbes;
+		factories = created;
+	}
+
+	/**
+	 * Begin operation
+	 *
+	 * @param type
+	 *            one of the operation constants
+	 * @return span to end when the operation is done
+	 */
+	public static Span begin(int type) {
+		Object[] types = factories;
+		if (types == null) {
+			if (unavailable || System.nanoTime() - nextCheck < 0 || !define())
+				return NONE;
+			types = factories;
+		}
+		try {
+			if (!((Boolean) isEnabled.invoke(probes[type])))
+				return NONE;
+			Object event = newEvent.invoke(types[type]);
+			begin.invoke(event);
+			return new Span(event);
+		} catch (Exception e) {
+			return NONE;
+		}
+	}
+}
@@ -38,7 +38,19 @@ import org.eclipse.egit.github.core.client.GitHubClient;
  */
 public class GitHubProjectMojo {
 	
-	private Logger log = Logger.getLogger(getClass().getName());
+	private Logger log;
+
+	/**
+	 * Get logger, created on first use so tasks logging elsewhere don't set
+	 * up java.util.logging
+	 *
+	 * @return logger
+	 */
+	protected synchronized Logger getLog() {
+		if (log == null)
+			log = Logger.getLogger(getClass().getName());
+		return log;
+	}
 
 	/**
 	 * Get formatted exception message for {@link IOException}
@@ -56,7 +68,7 @@ public class GitHubProjectMojo {
 	 * @return true if enabled, false otherwise
 	 */
 	public boolean isDebug() {
-		return log.isLoggable(Level.FINE);
+		return getLog().isLoggable(Level.FINE);
 	}
 
 	/**
@@ -65,7 +77,7 @@ public class GitHubProjectMojo {
 	 * @return true if enabled, false otherwise
 	 */
 	public boolean isInfo() {
-		return log.isLoggable(Level.INFO);
+		return getLog().isLoggable(Level.INFO);
 	}
 
 	/**
@@ -74,7 +86,7 @@ public class GitHubProjectMojo {
 	 * @param message
 	 */
 	public void debug(String message) {
-		log.fine(message);
+		getLog().fine(message);
 	}
 
 	/**
@@ -84,7 +96,7 @@ public class GitHubProjectMojo {
 	 * @param throwable
 	 */
 	public void debug(String message, Throwable throwable) {
-		log.log(Level.FINE, message, throwable);
+		getLog().log(Level.FINE, message, throwable);
 	}
 
 	/**
@@ -93,7 +105,7 @@ public class GitHubProjectMojo {
 	 * @param message
 	 */
 	public void info(String message) {
-		log.info(message);
+		getLog().info(message);
 	}
 
 	/**
@@ -103,7 +115,7 @@ public class GitHubProjectMojo {
 	 * @param throwable
 	 */
 	public void info(String message, Throwable throwable) {
-		log.log(Level.INFO, message, throwable);
+		getLog().log(Level.INFO, message, throwable);
 	}
 
 	/**
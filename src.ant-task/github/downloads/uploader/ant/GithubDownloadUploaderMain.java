@@ -0,0 +1,224 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Command line entry point running {@link GithubDownloadUploaderTask} without
+ * Ant, for publishing from shell scripts:
+ *
+ * <pre>
+ * java -jar github-downloads.jar --owner=o --repository=r --overwrite dist/app.zip
+ * </pre>
+ *
+ * Options are the attributes of the task, given as --name=value or as --name
+ * for true; the remaining arguments are the files to upload. Without
+ * credentials the token in the GITHUB_TOKEN environment variable is used.
+ * <p>
+ * Startup is kept short by skipping the Ant launcher and project, by logging
+ * straight to the console instead of through java.util.logging and by
+ * creating the HTTP client and its JSON mapping only once a request is made.
+ * The bin/github-downloads launcher additionally records the loaded classes
+ * in a class data sharing archive on the first run and maps it on the
+ * following ones.
+ */
+public class GithubDownloadUploaderMain {
+
+	private static final String USAGE = "Usage: github-downloads [--attribute=value | --flag]... file...\n"
+			+ "Attributes are those of the Ant task, for example --owner, --repository,\n"
+			+ "--oauth2Token, --description, --overwrite, --dryRun, --threads, --bundle.\n"
+			+ "Credentials default to the GITHUB_TOKEN environment variable.";
+
+	/**
+	 * Configure task from given arguments
+	 *
+	 * @param task
+	 * @param args
+	 * @return files to upload
+	 * @throws IllegalArgumentException
+	 *             on unknown attributes and malformed values
+	 */
+	public static List<File> configure(GithubDownloadUploaderTask task,
+			String[] args) {
+		List<File> files = new ArrayList<File>();
+		Method[] methods = null;
+		boolean options = true;
+		for (String arg : args) {
+			if (options && arg.equals("--")) {
+				options = false;
+				continue;
+			}
+			if (!options || !arg.startsWith("--")) {
+				files.add(new File(arg));
+				continue;
+			}
+			int equals = arg.indexOf('=');
+			String name = equals != -1 ? arg.substring(2, equals) : arg
+					.substring(2);
+			String value = equals != -1 ? arg.substring(equals + 1) : null;
+			if (methods == null)
+				methods = task.getClass().getMethods();
+			set(task, methods, name, value);
+		}
+		return files;
+	}
+
+	private static void set(GithubDownloadUploaderTask task, Method[] methods,
+			String name, String value) {
+		for (Method method : methods) {
+			if (!method.getName().equalsIgnoreCase("set" + name)
+					|| method.getParameterTypes().length != 1)
+				continue;
+			Object converted = convert(method.getParameterTypes()[0], name,
+					value);
+			if (converted == null)
+				continue;
+			try {
+				method.invoke(task, converted);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			} catch (InvocationTargetException e) {
+				throw new IllegalArgumentException("Invalid value of --"
+						+ name + ": " + e.getCause().getMessage(), e.getCause());
+			}
+			return;
+		}
+		throw new IllegalArgumentException("Unknown option --" + name);
+	}
+
+	/**
+	 * Convert option value to given parameter type
+	 *
+	 * @return value, null if the type can't be set from the command line
+	 */
+	private static Object convert(Class<?> type, String name, String value) {
+		if (type == boolean.class || type == Boolean.class)
+			return value == null || Boolean.parseBoolean(value);
+		if (value == null)
+			throw new IllegalArgumentException("Option --" + name
+					+ " needs a value");
+		try {
+			if (type == String.class)
+				return value;
+			if (type == File.class)
+				return new File(value);
+			if (type == int.class || type == Integer.class)
+				return Integer.valueOf(value);
+			if (type == long.class || type == Long.class)
+				return Long.valueOf(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Option --" + name
+					+ " needs a number: " + value);
+		}
+		return null;
+	}
+
+	/**
+	 * Run uploader with given arguments
+	 *
+	 * @param args
+	 * @param out
+	 *            stream for progress
+	 * @param err
+	 *            stream for errors
+	 * @return exit status: 0 on success, 1 if publishing failed, 2 on usage
+	 *         errors
+	 */
+	public static int run(String[] args, final PrintStream out,
+			final PrintStream err) {
+		if (args.length == 0 || args[0].equals("-h")
+				|| args[0].equals("--help")) {
+			out.println(USAGE);
+			return args.length == 0 ? 2 : 0;
+		}
+		final boolean verbose = Boolean.getBoolean("github.downloads.verbose");
+		GithubDownloadUploaderTask task = new GithubDownloadUploaderTask() {
+
+			@Override
+			public boolean isDebug() {
+				return verbose;
+			}
+
+			@Override
+			public void debug(String message) {
+				if (verbose)
+					err.println(message);
+			}
+
+			@Override
+			public void debug(String message, Throwable throwable) {
+				if (verbose) {
+					err.println(message);
+					throwable.printStackTrace(err);
+				}
+			}
+
+			@Override
+			public void info(String message) {
+				out.println(message);
+			}
+
+			@Override
+			public void info(String message, Throwable throwable) {
+				out.println(message + ": " + throwable.getMessage());
+			}
+
+			@Override
+			public void log(String message, int level) {
+				if (verbose)
+					err.println(message);
+			}
+		};
+		task.setProgressStream(out);
+		List<File> files;
+		try {
+			files = configure(task, args);
+		} catch (IllegalArgumentException e) {
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return 2;
+		}
+		task.setFiles(files.toArray(new File[files.size()]));
+		String token = System.getenv("GITHUB_TOKEN");
+		if (token != null && !configured(args))
+			task.setOAuth2Token(token);
+
+		try {
+			task.execute();
+			return 0;
+		} catch (BuildException e) {
+			err.println(e.getMessage());
+		} catch (RuntimeException e) {
+			err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			if (verbose)
+				e.printStackTrace(err);
+		}
+		return 1;
+	}
+
+	/**
+	 * @return whether credentials are given on the command line
+	 */
+	private static boolean configured(String[] args) {
+		for (String arg : args) {
+			if (arg.equals("--"))
+				break;
+			String option = arg.toLowerCase();
+			if (option.startsWith("--username=")
+					|| option.startsWith("--oauth2token=")
+					|| option.startsWith("--server="))
+				return true;
+		}
+		return false;
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+}
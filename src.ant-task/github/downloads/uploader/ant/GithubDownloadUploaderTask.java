@@ -1,23 +1,47 @@
 package github.downloads.uploader.ant;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.security.GeneralSecurityException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.zip.Deflater;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.resources.FileResource;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.egit.github.core.Download;
+import org.eclipse.egit.github.core.DownloadResource;
 import org.eclipse.egit.github.core.RepositoryId;
 import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.NoSuchPageException;
 import org.eclipse.egit.github.core.service.DownloadService;
 
 public class GithubDownloadUploaderTask extends Task {
@@ -133,7 +157,9 @@ public class GithubDownloadUploaderTask extends Task {
 	 * Show what downloads would be deleted and uploaded but don't actually
 	 * alter the current set of repository downloads. Showing what downloads
 	 * will be deleted does require still listing the current downloads
-	 * available from the repository.
+	 * available from the repository. A plan totalling downloads added,
+	 * replaced and skipped, bytes, requests and the duration estimated from
+	 * the throughput recorded by earlier runs is logged at the end.
 	 *
 	 * @parameter expression="${github.downloads.dryRun}"
 	 */
@@ -163,6 +189,327 @@ public class GithubDownloadUploaderTask extends Task {
 	 */
 	private String server;
 
+	/**
+	 * Number of files to upload concurrently
+	 *
+	 * @parameter expression="${github.downloads.threads}" default-value="1"
+	 */
+	private int threads = 1;
+
+	/**
+	 * Order in which files are uploaded: discovery, largest or smallest
+	 *
+	 * @parameter expression="${github.downloads.order}"
+	 */
+	private UploadOrder order = UploadOrder.DISCOVERY;
+
+	/**
+	 * Comma separated file name patterns uploaded before all other files, in
+	 * the given order
+	 *
+	 * @parameter expression="${github.downloads.priority}"
+	 */
+	private String[] priority;
+
+	/**
+	 * Upload limit in kilobytes per second shared by all uploads of this
+	 * task, zero or unset for unlimited. Applies on top of the JVM wide
+	 * limits, which it never raises.
+	 *
+	 * @parameter expression="${github.downloads.bandwidth}"
+	 */
+	private Integer bandwidth;
+
+	/**
+	 * Upload limit in kilobytes per second for each repository this task
+	 * uploads to, zero or unset for unlimited. Applies on top of the JVM wide
+	 * limits, which it never raises.
+	 *
+	 * @parameter expression="${github.downloads.repositoryBandwidth}"
+	 */
+	private Integer repositoryBandwidth;
+
+	private TokenBucket bucket;
+
+	private final Map<String, TokenBucket> repositoryBuckets = new HashMap<String, TokenBucket>();
+
+	/**
+	 * Compress files before upload: gzip, or fast for gzip at the fastest
+	 * level. Compressed downloads get a .gz extension.
+	 *
+	 * @parameter expression="${github.downloads.compression}"
+	 */
+	private String compression;
+
+	/**
+	 * Comma separated file name patterns to compress, all files if not set
+	 *
+	 * @parameter expression="${github.downloads.compressIncludes}"
+	 */
+	private String[] compressIncludes;
+
+	private ParallelGzip compressor;
+
+	/**
+	 * Name of a tar archive download to pack all files into instead of
+	 * uploading each file as its own download
+	 *
+	 * @parameter expression="${github.downloads.bundle}"
+	 */
+	private String bundle;
+
+	/**
+	 * Directory bundled file paths are relative to, for files not found
+	 * through a file set
+	 *
+	 * @parameter expression="${github.downloads.baseDir}"
+	 */
+	private File baseDir;
+
+	private List<Destination> destinations = new ArrayList<Destination>();
+
+	/**
+	 * Seconds an upload may stay below the minimum rate before it is aborted
+	 * and retried, also the connect and read timeout of uploads. Zero
+	 * disables stall detection.
+	 *
+	 * @parameter expression="${github.downloads.stallTimeout}"
+	 */
+	private int stallTimeout;
+
+	/**
+	 * Seconds to wait on the storage when verifying without a stall timeout
+	 */
+	private static final int VERIFY_TIMEOUT = 60;
+
+	/**
+	 * Seconds an upload to several destinations waits for a slower one
+	 * without a stall timeout, before the slower one reads on its own
+	 */
+	private static final int MAX_LAG = 30;
+
+	/**
+	 * Least bytes per second an upload must average over the stall timeout
+	 *
+	 * @parameter expression="${github.downloads.minRate}" default-value="1"
+	 */
+	private long minRate = 1;
+
+	/**
+	 * Number of times a failed or stalled upload is retried
+	 *
+	 * @parameter expression="${github.downloads.retries}" default-value="2"
+	 */
+	private int retries = 2;
+
+	/**
+	 * Send a duplicate request when listing existing downloads is slower than
+	 * usual for the repository and use whichever answers first. Listing times
+	 * are kept in the state directory, so hedging starts once five listings
+	 * of the repository were recorded across runs.
+	 *
+	 * @parameter expression="${github.downloads.hedge}"
+	 */
+	private boolean hedge;
+
+	/**
+	 * Skip files whose existing download was uploaded from identical content,
+	 * judged by the id, size and MD5 digest recorded at upload in the state
+	 * directory. Requires overwrite to list the existing downloads.
+	 *
+	 * @parameter expression="${github.downloads.skipUnchanged}"
+	 */
+	private boolean skipUnchanged;
+
+	/**
+	 * Directory recording uploaded downloads for change detection
+	 *
+	 * @parameter expression="${github.downloads.stateDir}"
+	 */
+	private File stateDir = new File(System.getProperty("user.home"),
+			".github-downloads");
+
+	private Map<File, String> digests;
+
+	private Map<File, Long> sizes;
+
+	/**
+	 * Check the stored size, and the digest where the storage reports one, of
+	 * each download while other files are still uploading, uploading
+	 * mismatching downloads again
+	 *
+	 * @parameter expression="${github.downloads.verify}"
+	 */
+	private boolean verify;
+
+	private ExecutorService verifier;
+
+	private final List<Future<Void>> verifications = Collections
+			.synchronizedList(new ArrayList<Future<Void>>());
+
+	/**
+	 * Compressed content kept while its verification may upload it again
+	 */
+	private final List<ParallelGzip.Compressed> unreleased = Collections
+			.synchronizedList(new ArrayList<ParallelGzip.Compressed>());
+
+	/**
+	 * Keep files that failed or were never attempted in an outbox in the state
+	 * directory. The next run for the same repository uploads them first, and
+	 * the failed run is replayed in the background meanwhile.
+	 *
+	 * @parameter expression="${github.downloads.outbox}"
+	 */
+	private boolean outbox;
+
+	/**
+	 * Number of background replays of a failed run. Only useful in a JVM
+	 * outliving the run, such as a Jenkins master: Ant and the command line
+	 * exit before a replay is due.
+	 *
+	 * @parameter expression="${github.downloads.replayAttempts}"
+	 *            default-value="0"
+	 */
+	private int replayAttempts;
+
+	/**
+	 * Seconds before the first background replay, doubling with each attempt
+	 *
+	 * @parameter expression="${github.downloads.replayDelay}"
+	 *            default-value="60"
+	 */
+	private int replayDelay = 60;
+
+	private boolean replaying;
+
+	private int replayAttempt;
+
+	private final Set<File> completed = Collections
+			.synchronizedSet(new HashSet<File>());
+
+	/**
+	 * Keep memory use independent of the number of files and downloads:
+	 * nested file sets are walked lazily and files are handed to the upload
+	 * threads as they are found, instead of being collected and ordered
+	 * first, and the existing downloads are listed page by page into a
+	 * compact {@link DownloadIndex}. Beyond the upload buffers this takes the
+	 * listings of the directories being walked and about 16 bytes plus the
+	 * name of each existing download, some 7 MB for 100,000 downloads. Can't
+	 * be combined with order, priority, bundle or outbox, which need all files
+	 * at once; skipUnchanged and prune still load their state and listing
+	 * whole.
+	 *
+	 * @parameter expression="${github.downloads.lowMemory}"
+	 */
+	private boolean lowMemory;
+
+	/**
+	 * Scope of prefetched listings, such as the build prefetching them: a
+	 * task only takes listings prefetched with the same scope
+	 */
+	private String prefetchScope;
+
+	/**
+	 * Downloads requested per page when listing in low memory mode
+	 */
+	private static final int PAGE_SIZE = 100;
+
+	private PublishPlan plan = new PublishPlan();
+
+	/**
+	 * Seconds between progress reports of running uploads, zero for none
+	 *
+	 * @parameter expression="${github.downloads.progress}"
+	 */
+	private int progress;
+
+	private PrintStream progressStream;
+
+	private volatile ProgressReporter reporter;
+
+	/**
+	 * Key store holding the RSA key to create detached OpenPGP signatures
+	 * with, uploaded as name.asc next to each download. Signatures are
+	 * computed while the content is read for upload.
+	 *
+	 * @parameter expression="${github.downloads.signKeyStore}"
+	 */
+	private File signKeyStore;
+
+	/**
+	 * Type of the signing key store
+	 *
+	 * @parameter expression="${github.downloads.signStoreType}"
+	 *            default-value="PKCS12"
+	 */
+	private String signStoreType = "PKCS12";
+
+	/**
+	 * @parameter expression="${github.downloads.signStorePassword}"
+	 */
+	private String signStorePassword;
+
+	/**
+	 * Alias of the signing key, the first key in the store if not set
+	 *
+	 * @parameter expression="${github.downloads.signKeyAlias}"
+	 */
+	private String signKeyAlias;
+
+	/**
+	 * Password of the signing key, the store password if not set
+	 *
+	 * @parameter expression="${github.downloads.signKeyPassword}"
+	 */
+	private String signKeyPassword;
+
+	/**
+	 * OpenPGP key id of the signing key as 16 hex digits, as shown by
+	 * gpg --keyid-format long
+	 *
+	 * @parameter expression="${github.downloads.signKeyId}"
+	 */
+	private String signKeyId;
+
+	private DetachedSigner signer;
+
+	/**
+	 * Delete existing downloads according to the nested retain rules after
+	 * uploading. Without files to upload the task only prunes.
+	 *
+	 * @parameter expression="${github.downloads.prune}"
+	 */
+	private boolean prune;
+
+	/**
+	 * Number of downloads deleted concurrently when pruning
+	 *
+	 * @parameter expression="${github.downloads.deleteThreads}"
+	 *            default-value="8"
+	 */
+	private int deleteThreads = 8;
+
+	private List<RetentionRule> retentionRules = new ArrayList<RetentionRule>();
+
+	/**
+	 * Add rule selecting existing downloads to delete when pruning
+	 *
+	 * @param rule
+	 */
+	public void addRetain(RetentionRule rule) {
+		retentionRules.add(rule);
+	}
+
+	/**
+	 * Add repository to publish to in addition to the others declared, instead
+	 * of the repository configured on the task itself
+	 *
+	 * @param destination
+	 */
+	public void addDestination(Destination destination) {
+		destinations.add(destination);
+	}
+
 	private File file;
 	
 	private File[] files;
@@ -171,182 +518,1702 @@ public class GithubDownloadUploaderTask extends Task {
 		this.files = files;
 	}
 
-	public File getFile() {
-		return file;
+	public File getFile() {
+		return file;
+	}
+
+	public void setFile(File file) {
+		this.file = file;
+	}
+
+	private List<FileSet> filesets = new ArrayList<FileSet>();
+	
+	public void addFileSet(FileSet fs) {
+		filesets.add(fs);
+	}
+
+	/**
+	 * Get files to create downloads from
+	 *
+	 * @return non-null but possibly empty list of files
+	 */
+	protected Collection<File> getFiles() {
+		List<File> files = new ArrayList<File>();
+		
+		if (filesets.size() == 0 && file != null) {
+			files.add(file);
+			return files;
+		}
+		
+		if (filesets.size() == 0 && this.files != null) {
+			for (File f: this.files) files.add(f);
+			return files;
+		}
+		
+		for (FileSet fs: filesets) {
+			for (Iterator<?> it = fs.iterator(); it.hasNext();) {
+				Object next = it.next();
+				files.add(next instanceof FileResource ? ((FileResource) next)
+						.getFile() : (File) next);
+			}
+		}
+		
+		return files;
+	}
+
+	/**
+	 * Get files to create downloads from, walking nested file sets lazily
+	 * instead of collecting their files
+	 *
+	 * @return files
+	 */
+	protected Iterable<File> iterateFiles() {
+		if (filesets.isEmpty())
+			return getFiles();
+		return FileSetWalker.iterate(filesets, getProject());
+	}
+
+	/**
+	 * Get file from artifact
+	 *
+	 * @param artifact
+	 * @return existent artifact file or null
+	 */
+	protected File getArtifactFile(Artifact artifact) {
+		if (artifact == null)
+			return null;
+		File file = artifact.getFile();
+		return file != null && file.isFile() && file.exists() ? file : null;
+	}
+
+	/**
+	 * Get map of existing downloads with names mapped to download identifiers.
+	 *
+	 * @param service
+	 * @param repository
+	 * @return map of existing downloads
+	 * @
+	 */
+	protected Map<String, Integer> getExistingDownloads(
+			DownloadService service, RepositoryId repository)
+			 {
+		if (lowMemory)
+			return indexDownloads(service, repository);
+		Map<String, Integer> existing = new HashMap<String, Integer>();
+		for (Download download : listDownloads(service, repository))
+			if (!StringUtils.isEmpty(download.getName()))
+				existing.put(download.getName(), download.getId());
+		if (isDebug()) {
+			final int size = existing.size();
+			if (size != 1)
+				debug(MessageFormat.format("Listed {0} existing downloads",
+						size));
+			else
+				debug("Listed 1 existing download");
+		}
+		return existing;
+	}
+
+	/**
+	 * Get compact index of existing downloads, reading the listing one page at
+	 * a time
+	 *
+	 * @param service
+	 * @param repository
+	 * @return index of existing downloads
+	 */
+	protected DownloadIndex indexDownloads(DownloadService service,
+			RepositoryId repository) {
+		DownloadIndex existing = new DownloadIndex();
+		FlightEvents.Span span = FlightEvents.begin(FlightEvents.LIST);
+		try {
+			for (Collection<Download> page : service.pageDownloads(repository,
+					PAGE_SIZE))
+				for (Download download : page)
+					if (!StringUtils.isEmpty(download.getName()))
+						existing.add(download.getName(), download.getId());
+		} catch (NoSuchPageException e) {
+			throw new IllegalStateException("Listing downloads failed: "
+					+ getExceptionMessage(e.getCause()), e);
+		} finally {
+			span.end(repository.generateId(), null, 0);
+		}
+		debug(MessageFormat.format("Indexed {0} existing downloads in {1}",
+				existing.size(),
+				PublishPlan.formatBytes(existing.getMemoryUsage())));
+		return existing;
+	}
+
+	/**
+	 * Get all existing downloads of given repository
+	 *
+	 * @param service
+	 * @param repository
+	 * @return downloads
+	 */
+	protected List<Download> listDownloads(DownloadService service,
+			RepositoryId repository) {
+		FlightEvents.Span span = FlightEvents.begin(FlightEvents.LIST);
+		try {
+			return service.getDownloads(repository);
+		} catch (IOException e) {
+			throw new IllegalStateException("Listing downloads failed: "
+					+ getExceptionMessage(e), e);
+		} finally {
+			span.end(repository.generateId(), null, 0);
+		}
+	}
+
+	private String getExceptionMessage(IOException e) {
+		return e != null && e.getMessage() != null ? e.getMessage() : (e != null ? e.toString() : null);
+	}
+
+	/**
+	 * Deleting existing download with given id and name
+	 *
+	 * @param repository
+	 * @param name
+	 * @param id
+	 * @param service
+	 * @
+	 */
+	protected void deleteDownload(RepositoryId repository, String name, int id,
+			DownloadService service)  {
+		try {
+			info(MessageFormat.format(
+					"Deleting existing download: {0} (id={1})", name,
+					Integer.toString(id)));
+			if (!dryRun) {
+				FlightEvents.Span span = FlightEvents.begin(FlightEvents.DELETE);
+				try {
+					service.deleteDownload(repository, id);
+				} finally {
+					span.end(repository.generateId(), name, 0);
+				}
+			}
+		} catch (IOException e) {
+			String prefix = MessageFormat.format(
+					"Deleting existing download {0} failed: ", name);
+			throw new IllegalStateException(prefix + getExceptionMessage(e), e);
+		}
+	}
+
+	/**
+	 * Get name of download created for given file, applying the configured
+	 * suffix before the file extension and appending .gz to compressed files
+	 *
+	 * @param file
+	 * @return download name
+	 */
+	protected String getDownloadName(File file) {
+		String name = applySuffix(file.getName());
+		if (isCompressed(file))
+			name += ".gz";
+		return name;
+	}
+
+	/**
+	 * Insert the configured suffix before the extension of given name
+	 *
+	 * @param name
+	 * @return name with suffix
+	 */
+	protected String applySuffix(String name) {
+		if (!StringUtils.isEmpty(suffix)) {
+			final int lastDot = name.lastIndexOf('.');
+			if (lastDot != -1)
+				name = name.substring(0, lastDot) + suffix
+						+ name.substring(lastDot);
+			else
+				name += suffix;
+		}
+		return name;
+	}
+
+	/**
+	 * Upload single file to all destinations, deleting the existing downloads
+	 * with the same name first
+	 *
+	 * @param destinations
+	 * @param file
+	 * @param name
+	 * @param existingIds
+	 *            ids of downloads to replace for each destination, elements
+	 *            may be null
+	 * @param digest
+	 *            MD5 digest of the file recorded for change detection, may be
+	 *            null
+	 */
+	protected void uploadFile(List<Destination> destinations,
+			final File file, String name, Integer[] existingIds, String digest) {
+		UploadSource source = new UploadSource() {
+
+			public long getLength() {
+				return getSize(file);
+			}
+
+			public InputStream openStream() throws IOException {
+				return new BufferedInputStream(new FileInputStream(file));
+			}
+		};
+		ParallelGzip.Compressed compressed = null;
+		if (compressor != null && dryRun && isCompressed(file))
+			plan.setUncompressed();
+		else if (compressor != null && isCompressed(file))
+			try {
+				source = compressed = compressor.compress(file);
+			} catch (IOException e) {
+				String prefix = MessageFormat.format(
+						"Compressing {0} failed: ", file.getName());
+				throw new IllegalStateException(prefix
+						+ getExceptionMessage(e), e);
+			}
+		try {
+			upload(destinations, name, existingIds, source, getSize(file),
+					digest);
+		} finally {
+			if (compressed != null)
+				release(compressed);
+		}
+	}
+
+	/**
+	 * Release compressed content once uploaded, or once verified if
+	 * verification may upload it again
+	 *
+	 * @param compressed
+	 */
+	protected void release(ParallelGzip.Compressed compressed) {
+		if (verifier != null)
+			unreleased.add(compressed);
+		else
+			compressed.release();
+	}
+
+	/**
+	 * Upload content of given source to all destinations, deleting the
+	 * existing downloads with the same name first. The source is read once;
+	 * with several destinations its bytes are sent to all of them
+	 * concurrently.
+	 *
+	 * @param destinations
+	 * @param name
+	 * @param existingIds
+	 *            ids of downloads to replace for each destination, elements
+	 *            may be null
+	 * @param source
+	 * @param uncompressedSize
+	 *            size before compression, logged if it differs
+	 * @param digest
+	 *            MD5 digest before compression recorded for change detection,
+	 *            may be null
+	 */
+	protected void upload(final List<Destination> destinations,
+			final String name, Integer[] existingIds, UploadSource source,
+			final long uncompressedSize, final String digest) {
+		upload(destinations, name, existingIds, source, uncompressedSize,
+				digest, signer != null);
+	}
+
+	/**
+	 * Upload content of given source to all destinations, optionally followed
+	 * by a detached signature computed while the content is sent
+	 *
+	 * @param destinations
+	 * @param name
+	 * @param existingIds
+	 * @param source
+	 * @param uncompressedSize
+	 * @param digest
+	 * @param sign
+	 *            whether to also upload a signature named name.asc
+	 */
+	protected void upload(final List<Destination> destinations,
+			final String name, Integer[] existingIds, UploadSource source,
+			final long uncompressedSize, final String digest, boolean sign) {
+		final long size = source.getLength();
+
+		for (int i = 0; i < existingIds.length; i++)
+			if (existingIds[i] != null) {
+				Destination destination = destinations.get(i);
+				deleteDownload(destination.repositoryId, name, existingIds[i],
+						getService(destination));
+			}
+
+		final Download download = new Download().setName(name).setSize(size);
+		if (!StringUtils.isEmpty(description))
+			download.setDescription(description);
+
+		if (size != uncompressedSize)
+			info(MessageFormat.format(
+					"Adding download: {0} ({1} bytes, {2} before compression)",
+					name, size, uncompressedSize));
+		else if (size != 1)
+			info(MessageFormat.format("Adding download: {0} ({1} bytes)",
+					name, size));
+		else
+			info(MessageFormat
+					.format("Adding download: {0} (1 byte)", name));
+
+		for (int i = 0; i < existingIds.length; i++)
+			plan.addUpload(destinations.get(i).getHost(), size,
+					existingIds[i] != null, verify);
+		if (reporter != null)
+			reporter.addTotal((size - uncompressedSize) * destinations.size());
+		if (dryRun) {
+			if (sign)
+				planSignature(destinations, name);
+			return;
+		}
+
+		InputStream in;
+		try {
+			in = source.openStream();
+		} catch (IOException e) {
+			String prefix = MessageFormat.format(
+					"Resource {0} upload failed: ", name);
+			throw new IllegalStateException(prefix + getExceptionMessage(e), e);
+		}
+		UploadDigest uploaded = null;
+		if (verifier != null) {
+			uploaded = new UploadDigest(size,
+					source instanceof ParallelGzip.Compressed ? null : digest);
+			in = uploaded.wrap(in);
+		}
+		DetachedSigner.Signing signing = null;
+		if (sign) {
+			signing = signer.start();
+			in = signing.wrap(in);
+		}
+		if (destinations.size() == 1) {
+			Destination destination = destinations.get(0);
+			createDownload(destination, download, source, in,
+					uncompressedSize, digest, uploaded, 0);
+		} else
+			uploadAll(destinations, download, source, in, uncompressedSize,
+					digest, uploaded);
+		if (signing != null)
+			uploadSignature(destinations, name, source, signing);
+	}
+
+	/**
+	 * Upload detached signature of given download
+	 *
+	 * @param destinations
+	 * @param name
+	 *            name of the signed download
+	 * @param source
+	 *            content of the signed download, read again only if a retried
+	 *            upload kept the signature from seeing all of it at once
+	 * @param signing
+	 *            signature of the content read for the first upload attempt
+	 */
+	protected void uploadSignature(List<Destination> destinations,
+			String name, UploadSource source, DetachedSigner.Signing signing) {
+		String signatureName = name + ".asc";
+		try {
+			if (signing.getLength() != source.getLength()) {
+				signing = signer.start();
+				InputStream in = signing.wrap(source.openStream());
+				try {
+					byte[] buffer = new byte[64 * 1024];
+					while (in.read(buffer) != -1)
+						;
+				} finally {
+					in.close();
+				}
+			}
+			uploadSignature(destinations, signatureName,
+					signing.finish(System.currentTimeMillis()));
+		} catch (IOException e) {
+			String prefix = MessageFormat.format("Signing {0} failed: ", name);
+			throw new IllegalStateException(prefix + getExceptionMessage(e), e);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(MessageFormat.format(
+					"Signing {0} failed: {1}", name, e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * Count the signature upload of given download in the plan of a dry run,
+	 * with the signature of no content standing in for the real one of the
+	 * same length
+	 *
+	 * @param destinations
+	 * @param name
+	 *            name of the signed download
+	 */
+	protected void planSignature(List<Destination> destinations, String name) {
+		try {
+			uploadSignature(destinations, name + ".asc", signer.start()
+					.finish(System.currentTimeMillis()));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(MessageFormat.format(
+					"Signing {0} failed: {1}", name, e.getMessage()), e);
+		}
+	}
+
+	private void uploadSignature(List<Destination> destinations,
+			String signatureName, final byte[] signature) {
+		Integer[] existingIds = new Integer[destinations.size()];
+		for (int i = 0; i < existingIds.length; i++) {
+			Destination destination = destinations.get(i);
+			synchronized (destination) {
+				existingIds[i] = destination.existing.remove(signatureName);
+			}
+		}
+		UploadSource signatureSource = new UploadSource() {
+
+			public long getLength() {
+				return signature.length;
+			}
+
+			public InputStream openStream() {
+				return new ByteArrayInputStream(signature);
+			}
+		};
+		upload(destinations, signatureName, existingIds, signatureSource,
+				signature.length, null, false);
+	}
+
+	/**
+	 * Upload content read once from given stream to several destinations
+	 * concurrently. A destination falling behind reads on from a separate
+	 * stream rather than holding back the others.
+	 *
+	 * @param destinations
+	 * @param download
+	 * @param source
+	 *            source to reopen for retries
+	 * @param in
+	 * @param uncompressedSize
+	 * @param digest
+	 * @param uploaded
+	 *            digest of the uploaded content fed by given stream, shared by
+	 *            all destinations, null unless verifying
+	 */
+	protected void uploadAll(final List<Destination> destinations,
+			final Download download, final UploadSource source,
+			InputStream in, final long uncompressedSize, final String digest,
+			final UploadDigest uploaded) {
+		// Detach a lagging destination well before the watchdog would see the
+		// others waiting for it as stalled
+		long maxLag = stallTimeout > 0 ? stallTimeout * 1000L / 2
+				: MAX_LAG * 1000L;
+		final TeeInputStreams tee = new TeeInputStreams(in,
+				destinations.size(), source, maxLag);
+		List<Callable<Void>> jobs = new ArrayList<Callable<Void>>(
+				destinations.size());
+		for (int i = 0; i < destinations.size(); i++) {
+			final int index = i;
+			jobs.add(new Callable<Void>() {
+
+				public Void call() {
+					Destination destination = destinations.get(index);
+					createDownload(destination, download, source,
+							tee.get(index), uncompressedSize, digest, uploaded,
+							0);
+					return null;
+				}
+			});
+		}
+		runAll(jobs, destinations.size());
+	}
+
+	/**
+	 * Record uploaded download for change detection
+	 *
+	 * @param destination
+	 * @param resource
+	 * @param size
+	 *            size before compression
+	 * @param digest
+	 *            digest before compression, nothing is recorded if null
+	 */
+	protected void recordUpload(Destination destination,
+			DownloadResource resource, long size, String digest) {
+		if (destination.digests != null && digest != null)
+			destination.digests.record(resource.getName(), resource.getId(),
+					size, digest);
+	}
+
+	/**
+	 * Create download at given destination from given stream, closing it, and
+	 * record it for change detection. Failed attempts are retried with a new
+	 * stream opened from the source.
+	 *
+	 * @param destination
+	 * @param download
+	 * @param source
+	 * @param in
+	 *            stream for the first attempt
+	 * @param size
+	 *            size before compression
+	 * @param digest
+	 *            digest before compression, nothing is recorded if null
+	 * @return created download
+	 */
+	protected DownloadResource createDownload(Destination destination,
+			Download download, UploadSource source, InputStream in, long size,
+			String digest) {
+		UploadDigest uploaded = null;
+		if (verifier != null) {
+			uploaded = new UploadDigest(source.getLength(), null);
+			in = uploaded.wrap(in);
+		}
+		return createDownload(destination, download, source, in, size, digest,
+				uploaded, 0);
+	}
+
+	/**
+	 * Create download at given destination from given stream, closing it,
+	 * record it for change detection and schedule its verification if enabled
+	 *
+	 * @param destination
+	 * @param download
+	 * @param source
+	 * @param in
+	 *            stream for the first attempt
+	 * @param size
+	 *            size before compression
+	 * @param digest
+	 *            digest before compression, nothing is recorded if null
+	 * @param uploaded
+	 *            digest of the uploaded content fed by given stream, possibly
+	 *            shared with other destinations, null unless verifying
+	 * @param verification
+	 *            number of earlier uploads of this download that failed
+	 *            verification
+	 * @return created download
+	 */
+	protected DownloadResource createDownload(Destination destination,
+			Download download, UploadSource source, InputStream in, long size,
+			String digest, UploadDigest uploaded, int verification) {
+		UploadDigest attempted = uploaded;
+		for (int attempt = 0;; attempt++)
+			try {
+				if (attempt > 0) {
+					in = source.openStream();
+					// Hash the retry only if the shared stream never completed
+					if (uploaded != null && uploaded.get() == null) {
+						attempted = new UploadDigest(source.getLength(), null);
+						in = attempted.wrap(in);
+					}
+				}
+				DownloadResource resource = createDownloadOnce(destination,
+						download, in);
+				recordUpload(destination, resource, size, digest);
+				if (uploaded != null) {
+					String md5 = uploaded.get();
+					if (md5 == null)
+						md5 = attempted.get();
+					scheduleVerification(destination, download, source,
+							resource, md5, size, digest, verification);
+				}
+				return resource;
+			} catch (IOException e) {
+				String prefix = MessageFormat.format(
+						"Resource {0} upload failed: ", download.getName());
+				if (destinations.size() > 1)
+					prefix = MessageFormat.format(
+							"Resource {0} upload to {1} failed: ",
+							download.getName(), destination.getKey());
+				if (attempt >= retries)
+					throw new IllegalStateException(prefix
+							+ getExceptionMessage(e), e);
+				info(prefix + getExceptionMessage(e) + ", retrying");
+				FlightEvents.Span span = FlightEvents.begin(FlightEvents.RETRY);
+				try {
+					Thread.sleep(1000L << attempt);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new BuildException("Interrupted while uploading", ie);
+				} finally {
+					span.end(destination.repositoryId.generateId(),
+							download.getName(), download.getSize());
+				}
+			}
+	}
+
+	/**
+	 * Verify given download on the verifier threads while other uploads go on
+	 *
+	 * @param destination
+	 * @param download
+	 * @param source
+	 * @param resource
+	 * @param md5
+	 *            digest of the uploaded content
+	 * @param size
+	 *            size before compression
+	 * @param digest
+	 *            digest before compression
+	 * @param verification
+	 */
+	protected void scheduleVerification(final Destination destination,
+			final Download download, final UploadSource source,
+			final DownloadResource resource, final String md5,
+			final long size, final String digest, final int verification) {
+		verifications.add(verifier.submit(new Callable<Void>() {
+
+			public Void call() {
+				verify(destination, download, source, resource, md5, size,
+						digest, verification);
+				return null;
+			}
+		}));
+	}
+
+	/**
+	 * Check that the stored content has the uploaded size and, where the
+	 * storage reports an MD5 tag, the uploaded digest. A mismatching download
+	 * is deleted and uploaded again, up to the configured number of retries,
+	 * and recorded under its new id.
+	 *
+	 * @param destination
+	 * @param download
+	 * @param source
+	 * @param resource
+	 * @param md5
+	 * @param size
+	 *            size before compression
+	 * @param digest
+	 *            digest before compression
+	 * @param verification
+	 */
+	protected void verify(Destination destination, Download download,
+			UploadSource source, DownloadResource resource, String md5,
+			long size, String digest, int verification) {
+		String name = download.getName();
+		String problem;
+		try {
+			problem = getMismatch(destination, download, resource.getId(), md5);
+		} catch (IOException e) {
+			info(MessageFormat.format("Verifying {0} failed: {1}", name,
+					getExceptionMessage(e)));
+			return;
+		}
+		if (problem == null) {
+			debug("Verified " + name);
+			return;
+		}
+
+		String prefix = MessageFormat.format(
+				"Download {0} failed verification: ", name);
+		if (verification >= retries)
+			throw new IllegalStateException(prefix + problem);
+		info(prefix + problem + ", uploading again");
+		deleteDownload(destination.repositoryId, name, resource.getId(),
+				getService(destination));
+		InputStream in;
+		try {
+			in = source.openStream();
+		} catch (IOException e) {
+			throw new IllegalStateException(prefix + getExceptionMessage(e), e);
+		}
+		createDownload(destination, download, source, in, size, digest,
+				new UploadDigest(source.getLength(), md5), verification + 1);
+	}
+
+	/**
+	 * Compare stored content, as reported by the storage, with uploaded
+	 * content. The size the API reports is the one declared when creating the
+	 * download, so only the storage shows a truncated upload.
+	 *
+	 * @param destination
+	 * @param download
+	 * @param id
+	 * @param md5
+	 * @return description of the mismatch, null if none found
+	 * @throws IOException
+	 */
+	protected String getMismatch(Destination destination, Download download,
+			int id, String md5) throws IOException {
+		Download stored = getService(destination).getDownload(
+				destination.repositoryId, id);
+		if (stored.getHtmlUrl() == null)
+			return null;
+		StreamingDownloadService.StoredContent content = StreamingDownloadService
+				.getStoredContent(stored.getHtmlUrl(),
+						(stallTimeout > 0 ? stallTimeout : VERIFY_TIMEOUT) * 1000);
+		if (content.length != -1 && content.length != download.getSize())
+			return "size " + content.length + " instead of "
+					+ download.getSize();
+		if (content.md5 != null && !content.md5.equalsIgnoreCase(md5))
+			return "digest " + content.md5 + " instead of " + md5;
+		return null;
+	}
+
+	/**
+	 * Wait for all scheduled verifications, including those of downloads
+	 * uploaded again, rethrowing the first failure
+	 */
+	protected void awaitVerifications() {
+		for (int i = 0;; i++) {
+			Future<Void> verification;
+			synchronized (verifications) {
+				if (i >= verifications.size())
+					return;
+				verification = verifications.get(i);
+			}
+			try {
+				verification.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BuildException("Interrupted while verifying", e);
+			} catch (ExecutionException e) {
+				throw unwrap(e);
+			}
+		}
+	}
+
+	/**
+	 * Create download resource and send content, watching the transfer for
+	 * stalls. A download left behind by a failed transfer is deleted.
+	 *
+	 * @param destination
+	 * @param download
+	 * @param in
+	 * @return created download
+	 * @throws IOException
+	 */
+	protected DownloadResource createDownloadOnce(
+			final Destination destination, final Download download,
+			InputStream in) throws IOException {
+		ScheduledFuture<?> watch = null;
+		ProgressReporter.Transfer transfer = null;
+		TransferMonitor monitor = null;
+		boolean success = false;
+		FlightEvents.Span span = FlightEvents.begin(FlightEvents.UPLOAD);
+		try {
+			TokenBucket[] buckets = getBuckets(destination.repositoryId
+					.generateId());
+			if (buckets.length > 0)
+				in = new ThrottledInputStream(in, buckets);
+			monitor = new TransferMonitor(in,
+					download.getSize());
+			in = monitor;
+			if (reporter != null)
+				transfer = reporter.register(download.getName(), monitor);
+			if (stallTimeout > 0)
+				watch = StallWatchdog.watch(monitor, minRate,
+						stallTimeout * 1000L, new Runnable() {
+
+							public void run() {
+								info(MessageFormat.format(
+										"Upload of {0} stalled, aborting",
+										download.getName()));
+							}
+						});
+
+			DownloadResource resource = getService(destination).createResource(
+					destination.repositoryId, download);
+			plan.startTransfer(destination.getHost());
+			try {
+				getService(destination).uploadResource(resource, in,
+						download.getSize());
+			} catch (IOException e) {
+				try {
+					getService(destination).deleteDownload(
+							destination.repositoryId, resource.getId());
+				} catch (IOException ignored) {
+					debug("Deleting failed download failed", ignored);
+				}
+				throw e;
+			} finally {
+				plan.endTransfer(destination.getHost(), monitor.getTransferred());
+			}
+			if (resource.getName() == null)
+				resource.setName(download.getName());
+			success = true;
+			return resource;
+		} finally {
+			if (watch != null)
+				watch.cancel(false);
+			if (transfer != null)
+				reporter.finish(transfer, success);
+			span.end(destination.repositoryId.generateId(), download
+					.getName(), monitor != null ? monitor.getTransferred() : 0);
+			in.close();
+		}
+	}
+
+	/**
+	 * Get path of given file inside a bundle: relative to the directory of the
+	 * file set it was found in or to the base directory, or its name if it is
+	 * outside of both
+	 *
+	 * @param file
+	 * @return path using / as separator
+	 */
+	protected String getBundlePath(File file) {
+		List<File> dirs = new ArrayList<File>();
+		for (FileSet fs : filesets)
+			dirs.add(fs.getDir(getProject()));
+		if (baseDir != null)
+			dirs.add(baseDir);
+		String path = file.getAbsolutePath();
+		for (File dir : dirs) {
+			String prefix = dir.getAbsolutePath() + File.separator;
+			if (path.startsWith(prefix))
+				return path.substring(prefix.length()).replace(
+						File.separatorChar, '/');
+		}
+		return file.getName();
+	}
+
+	/**
+	 * Upload all files as one tar archive download named after the bundle
+	 *
+	 * @param destinations
+	 * @param files
+	 */
+	protected void uploadBundle(List<Destination> destinations,
+			Iterable<File> files) {
+		List<TarArchive.Entry> entries = new ArrayList<TarArchive.Entry>();
+		for (File file : files)
+			entries.add(new TarArchive.Entry(getBundlePath(file), file));
+		TarArchive archive = new TarArchive(entries, "INDEX");
+
+		String name = applySuffix(bundle);
+
+		UploadSource source = archive;
+		ParallelGzip.Compressed compressed = null;
+		if (compressor != null) {
+			name += ".gz";
+			if (dryRun)
+				plan.setUncompressed();
+			else
+				try {
+					source = compressed = compressor.compress(archive);
+				} catch (IOException e) {
+					throw new IllegalStateException("Compressing bundle failed: "
+							+ getExceptionMessage(e), e);
+				}
+		}
+
+		Integer[] existingIds = new Integer[destinations.size()];
+		for (int i = 0; i < existingIds.length; i++) {
+			Destination destination = destinations.get(i);
+			existingIds[i] = destination.existing.remove(name);
+			info(MessageFormat.format(
+					"Adding {0} files as download {1} to repository {2}",
+					entries.size(), name, destination.repositoryId.generateId()));
+		}
+		if (reporter != null)
+			reporter.addTotal(archive.getLength() * destinations.size());
+		try {
+			upload(destinations, name, existingIds, source,
+					archive.getLength(), null);
+		} finally {
+			if (compressed != null)
+				release(compressed);
+		}
+		if (outbox)
+			for (File file : files)
+				completed.add(file);
+	}
+
+	/**
+	 * Is given file compressed before upload?
+	 *
+	 * @param file
+	 * @return true if compression is enabled and file matches the compressed
+	 *         patterns
+	 */
+	protected boolean isCompressed(File file) {
+		if (compression == null)
+			return false;
+		if (compressIncludes == null || compressIncludes.length == 0)
+			return true;
+		return PathUtils.matchesAny(file.getName(), compressIncludes);
+	}
+
+	/**
+	 * Run given jobs in order, using up to the configured number of threads.
+	 * The first failure cancels all jobs not yet started and is rethrown.
+	 *
+	 * @param jobs
+	 */
+	protected void runAll(Iterable<Callable<Void>> jobs) {
+		runAll(jobs, threads);
+	}
+
+	/**
+	 * Run given jobs in order, using up to given number of threads. Jobs are
+	 * only taken from the iterable when a thread is free to run them. The
+	 * first failure cancels all jobs not yet started and is rethrown.
+	 *
+	 * @param jobs
+	 * @param threads
+	 */
+	protected void runAll(Iterable<Callable<Void>> jobs, int threads) {
+		int size = jobs instanceof Collection ? ((Collection<?>) jobs).size()
+				: Integer.MAX_VALUE;
+		if (threads <= 1 || size <= 1) {
+			for (Callable<Void> job : jobs)
+				try {
+					job.call();
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, size));
+		try {
+			CompletionService<Void> completion = new ExecutorCompletionService<Void>(
+					executor);
+			int running = 0;
+			for (Callable<Void> job : jobs) {
+				if (running == threads) {
+					await(completion);
+					running--;
+				}
+				completion.submit(job);
+				running++;
+			}
+			for (; running > 0; running--)
+				await(completion);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BuildException("Interrupted while uploading", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void await(CompletionService<Void> completion)
+			throws InterruptedException {
+		try {
+			completion.take().get();
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private static RuntimeException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException)
+			return (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		return new IllegalStateException(cause.getMessage(), cause);
+	}
+
+	/**
+	 * Get buckets limiting uploads of this task to given repository
+	 *
+	 * @param repositoryId
+	 * @return JVM wide buckets followed by the limited buckets of this task
+	 */
+	protected TokenBucket[] getBuckets(String repositoryId) {
+		TokenBucket repository;
+		synchronized (repositoryBuckets) {
+			repository = repositoryBuckets.get(repositoryId);
+			if (repository == null) {
+				repository = new TokenBucket(
+						repositoryBandwidth != null ? repositoryBandwidth * 1024L
+								: 0);
+				repositoryBuckets.put(repositoryId, repository);
+			}
+		}
+		return BandwidthLimiter.getBuckets(repositoryId, bucket, repository);
+	}
+
+	public void execute() throws BuildException  {
+		bucket = new TokenBucket(bandwidth != null ? bandwidth * 1024L : 0);
+		synchronized (repositoryBuckets) {
+			repositoryBuckets.clear();
+		}
+
+		List<Destination> destinations = getDestinations();
+		for (Destination destination : destinations)
+			resolveDestination(destination);
+
+		if (lowMemory) {
+			if (outbox || !StringUtils.isEmpty(bundle)
+					|| order != UploadOrder.DISCOVERY || priority != null)
+				throw new BuildException(
+						"lowMemory can't be combined with order, priority, bundle or outbox");
+			publish(destinations, iterateFiles());
+			return;
+		}
+
+		List<File> files = order.sort(replaying ? Collections.<File> emptyList()
+				: getFiles(), priority);
+		if (outbox && !dryRun) {
+			files = takeOutbox(destinations, files);
+			if (replaying && files.isEmpty())
+				return;
+		}
+		completed.clear();
+		try {
+			publish(destinations, files);
+		} catch (RuntimeException e) {
+			if (outbox && !dryRun)
+				saveOutbox(destinations, files);
+			throw e;
+		}
+		if (outbox && !dryRun)
+			saveOutbox(destinations, files);
+	}
+
+	/**
+	 * Connect to given destinations, upload given files, verify and prune
+	 *
+	 * @param destinations
+	 * @param files
+	 */
+	protected void publish(List<Destination> destinations, Iterable<File> files) {
+		plan = new PublishPlan();
+		if (signKeyStore != null && signer == null) {
+			if (StringUtils.isEmpty(signKeyId))
+				throw new BuildException("Signing requires the signKeyId");
+			try {
+				signer = DetachedSigner.load(signKeyStore, signStoreType,
+						signStorePassword, signKeyAlias, signKeyPassword,
+						signKeyId);
+			} catch (IOException e) {
+				throw new BuildException("Loading signing key failed: "
+						+ getExceptionMessage(e), e);
+			} catch (GeneralSecurityException e) {
+				throw new BuildException("Loading signing key failed: "
+						+ e.getMessage(), e);
+			}
+		}
+		for (Destination destination : destinations)
+			connect(destination);
+
+		if (dryRun)
+			info("Dry run mode, downloads will not be deleted or uploaded");
+
+		ExecutorService compressExecutor = null;
+		if (compression != null) {
+			int cores = Runtime.getRuntime().availableProcessors();
+			compressExecutor = Executors.newFixedThreadPool(cores);
+			compressor = new ParallelGzip(compressExecutor,
+					"fast".equals(compression) ? Deflater.BEST_SPEED
+							: Deflater.DEFAULT_COMPRESSION, cores);
+		}
+		if (verify && !dryRun)
+			verifier = Executors.newFixedThreadPool(Math.max(1, threads));
+		if (progress > 0 && !dryRun) {
+			reporter = new ProgressReporter(progress * 1000L) {
+
+				protected void print(String line) {
+					if (progressStream != null)
+						progressStream.println(line);
+					else
+						info(line);
+				}
+			};
+			reporter.start();
+		}
+		try {
+			if (!StringUtils.isEmpty(bundle))
+				uploadBundle(destinations, files);
+			else if (!prune || files.iterator().hasNext())
+				uploadFiles(destinations, files);
+			if (verifier != null)
+				awaitVerifications();
+			if (!dryRun)
+				recordThroughput();
+			if (prune && !replaying)
+				for (Destination destination : destinations)
+					prune(destination);
+			if (dryRun)
+				reportPlan();
+		} finally {
+			if (compressExecutor != null)
+				compressExecutor.shutdownNow();
+			compressor = null;
+			if (verifier != null)
+				verifier.shutdownNow();
+			verifier = null;
+			verifications.clear();
+			for (ParallelGzip.Compressed compressed : unreleased)
+				compressed.release();
+			unreleased.clear();
+			if (reporter != null)
+				reporter.stop();
+			reporter = null;
+			for (Destination destination : destinations)
+				if (destination.digests != null && !dryRun)
+					try {
+						destination.digests.save();
+					} catch (IOException e) {
+						info("Saving uploaded digests failed: "
+								+ getExceptionMessage(e));
+					}
+		}
+	}
+
+	/**
+	 * Take over files pending in the outboxes of given destinations, cancelling
+	 * their background replay
+	 *
+	 * @param destinations
+	 * @param files
+	 *            files of this run
+	 * @return pending files followed by the files of this run
+	 */
+	protected List<File> takeOutbox(List<Destination> destinations,
+			List<File> files) {
+		Set<File> pending = new LinkedHashSet<File>();
+		for (Destination destination : destinations)
+			try {
+				if (!replaying)
+					Outbox.cancel(destination.getKey());
+				for (File file : Outbox.read(Outbox.getFile(stateDir,
+						destination.getKey())))
+					if (file.isFile())
+						pending.add(file);
+					else
+						info("Skipping pending upload of missing file: "
+								+ file);
+			} catch (IOException e) {
+				info("Reading outbox failed: " + getExceptionMessage(e));
+			}
+		pending.removeAll(files);
+		if (pending.isEmpty())
+			return files;
+		info(MessageFormat.format("Resuming {0} pending uploads",
+				pending.size()));
+		List<File> all = new ArrayList<File>(pending);
+		all.addAll(files);
+		return all;
+	}
+
+	/**
+	 * Write files of this run not uploaded to the outboxes of given
+	 * destinations and schedule a background replay of each outbox, or clear
+	 * the outboxes if everything was uploaded
+	 *
+	 * @param destinations
+	 * @param files
+	 */
+	protected void saveOutbox(List<Destination> destinations, List<File> files) {
+		List<File> pending = new ArrayList<File>();
+		for (File file : files)
+			if (!completed.contains(file))
+				pending.add(file);
+		Map<String, String> settings = new LinkedHashMap<String, String>();
+		settings.put("description", description);
+		settings.put("suffix", suffix);
+		settings.put("compression", compression);
+		settings.put("bundle", bundle);
+		settings.put("failed", new Date().toString());
+		for (Destination destination : destinations)
+			try {
+				Outbox.write(Outbox.getFile(stateDir, destination.getKey()),
+						pending, settings);
+			} catch (IOException e) {
+				info("Writing outbox failed: " + getExceptionMessage(e));
+			}
+		if (pending.isEmpty())
+			return;
+
+		info(MessageFormat.format("Kept {0} pending uploads for the next run",
+				pending.size()));
+		if (replayAttempt >= replayAttempts)
+			return;
+		for (final Destination destination : destinations) {
+			final File outboxFile = Outbox.getFile(stateDir,
+					destination.getKey());
+			Outbox.schedule(destination.getKey(), new Runnable() {
+
+				public void run() {
+					try {
+						createReplay(destination,
+								Outbox.readSettings(outboxFile)).execute();
+					} catch (IOException e) {
+						info("Reading outbox failed: "
+								+ getExceptionMessage(e));
+					} catch (RuntimeException e) {
+						info("Replaying pending uploads failed: "
+								+ e.getMessage());
+					}
+				}
+			}, replayDelay * 1000L << replayAttempt);
+		}
+	}
+
+	/**
+	 * Create task replaying the outbox of given destination in the
+	 * background, with the connection settings of this task and the upload
+	 * settings saved in the outbox. Nothing of this run is shared, such as its
+	 * progress stream.
+	 *
+	 * @param destination
+	 *            destination of the outbox
+	 * @param settings
+	 *            settings saved with the pending files
+	 * @return replaying task
+	 */
+	protected GithubDownloadUploaderTask createReplay(Destination destination,
+			Map<String, String> settings) {
+		GithubDownloadUploaderTask replay = new GithubDownloadUploaderTask();
+		replay.setProject(getProject());
+		replay.owner = owner;
+		replay.repository = repository;
+		replay.username = username;
+		replay.password = password;
+		replay.oauth2Token = oauth2Token;
+		replay.host = host;
+		replay.server = server;
+		replay.destinations.add(destination.copy());
+		replay.overwrite = overwrite;
+		replay.threads = threads;
+		replay.bandwidth = bandwidth;
+		replay.repositoryBandwidth = repositoryBandwidth;
+		replay.compressIncludes = compressIncludes;
+		replay.baseDir = baseDir;
+		replay.stallTimeout = stallTimeout;
+		replay.minRate = minRate;
+		replay.retries = retries;
+		replay.hedge = hedge;
+		replay.skipUnchanged = skipUnchanged;
+		replay.stateDir = stateDir;
+		replay.verify = verify;
+		replay.signKeyStore = signKeyStore;
+		replay.signStoreType = signStoreType;
+		replay.signStorePassword = signStorePassword;
+		replay.signKeyAlias = signKeyAlias;
+		replay.signKeyPassword = signKeyPassword;
+		replay.signKeyId = signKeyId;
+		replay.signer = signer;
+		replay.deleteThreads = deleteThreads;
+		replay.outbox = true;
+		replay.replayAttempts = replayAttempts;
+		replay.replayDelay = replayDelay;
+		replay.replayAttempt = replayAttempt + 1;
+		replay.replaying = true;
+		replay.description = settings.get("description");
+		replay.suffix = settings.get("suffix");
+		replay.compression = settings.get("compression");
+		replay.bundle = settings.get("bundle");
+		return replay;
+	}
+
+	/**
+	 * Blend throughput of this run into the recorded history of each host,
+	 * taking only the time content was being sent to storage
+	 */
+	protected void recordThroughput() {
+		List<String> hosts = plan.getTransferHosts();
+		if (hosts.isEmpty())
+			return;
+		ThroughputHistory history = new ThroughputHistory(
+				ThroughputHistory.getFile(stateDir));
+		for (String host : hosts)
+			history.record(host, plan.getTransferredBytes(host),
+					plan.getTransferMillis(host));
+		try {
+			history.save();
+		} catch (IOException e) {
+			debug("Saving throughput history failed", e);
+		}
+	}
+
+	/**
+	 * Log what this dry run would have done and how long it would take at the
+	 * throughput recorded for each host
+	 */
+	protected void reportPlan() {
+		info("Plan: " + plan);
+		ThroughputHistory history = new ThroughputHistory(
+				ThroughputHistory.getFile(stateDir));
+		for (String host : plan.getHosts()) {
+			long bytes = plan.getBytes(host);
+			long rate = history.getRate(host);
+			if (rate > 0)
+				info(MessageFormat.format("{0}: {1} at {2}/s, about {3}", host,
+						PublishPlan.formatBytes(bytes),
+						PublishPlan.formatBytes(rate),
+						PublishPlan.formatDuration(bytes * 1000 / rate)));
+			else
+				info(MessageFormat.format(
+						"{0}: {1}, no throughput recorded yet", host,
+						PublishPlan.formatBytes(bytes)));
+		}
+		long estimate = plan.getEstimatedMillis(history);
+		if (estimate >= 0 && plan.isUncompressed())
+			info("Estimated transfer time: at most "
+					+ PublishPlan.formatDuration(estimate)
+					+ ", sizes are before compression");
+		else if (estimate >= 0)
+			info("Estimated transfer time: "
+					+ PublishPlan.formatDuration(estimate));
+	}
+
+	/**
+	 * Delete existing downloads of given destination selected by the retention
+	 * rules, several at a time
+	 *
+	 * @param destination
+	 */
+	protected void prune(final Destination destination) {
+		if (retentionRules.isEmpty())
+			throw new BuildException(
+					"Pruning requires at least one nested retain rule");
+		List<Download> delete = RetentionRule.select(
+				listDownloads(getService(destination), destination.repositoryId),
+				retentionRules, System.currentTimeMillis());
+		plan.addRequests(1);
+		plan.addDeletes(delete.size());
+		info(MessageFormat.format("Pruning {0} downloads of {1}",
+				delete.size(), destination.repositoryId.generateId()));
+
+		List<Callable<Void>> jobs = new ArrayList<Callable<Void>>(
+				delete.size());
+		for (final Download download : delete)
+			jobs.add(new Callable<Void>() {
+
+				public Void call() {
+					deleteDownload(destination.repositoryId,
+							download.getName(), download.getId(),
+							getService(destination));
+					return null;
+				}
+			});
+		runAll(jobs, deleteThreads);
+	}
+
+	/**
+	 * Get destinations to publish to, the task's own repository if no nested
+	 * destinations are declared
+	 *
+	 * @return non-empty list of destinations
+	 */
+	protected List<Destination> getDestinations() {
+		if (!destinations.isEmpty())
+			return destinations;
+		Destination destination = new Destination();
+		destination.setHost(host);
+		destination.setOwner(owner);
+		destination.setRepository(repository);
+		destination.setUsername(username);
+		destination.setPassword(password);
+		destination.setOAuth2Token(oauth2Token);
+		destination.setServer(server);
+		return Collections.singletonList(destination);
+	}
+
+	private static String or(String value, String defaultValue) {
+		return StringUtils.isEmpty(value) ? defaultValue : value;
+	}
+
+	/**
+	 * List existing downloads of given destination, using a prefetched listing
+	 * if there is one. The destination must have been resolved.
+	 *
+	 * @param destination
+	 */
+	protected void connect(Destination destination) {
+		if (skipUnchanged)
+			destination.digests = new DigestStore(DigestStore.getFile(
+					stateDir, destination.getKey()));
+
+		if (overwrite) {
+			destination.existing = null;
+			Future<Map<String, Integer>> prefetched = ListingCache
+					.take(getPrefetchKey(destination));
+			if (prefetched != null)
+				try {
+					destination.existing = prefetched.get();
+					debug("Using prefetched listing of " + destination.getKey());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new BuildException("Interrupted while listing", e);
+				} catch (ExecutionException e) {
+					debug("Prefetching listing failed", e.getCause());
+				}
+			if (destination.existing == null) {
+				plan.addRequests(1);
+				destination.existing = hedge ? getExistingDownloadsHedged(destination)
+						: getExistingDownloads(getService(destination),
+								destination.repositoryId);
+			}
+			if (lowMemory)
+				log("Got " + destination.existing.size() + " existing downloads");
+			else
+				log("Got existing downloads: " + destination.existing);
+		} else
+			destination.existing = Collections.emptyMap();
+	}
+
+	private String getPrefetchKey(Destination destination) {
+		return prefetchScope != null ? prefetchScope + " "
+				+ destination.getKey() : destination.getKey();
 	}
 
-	public void setFile(File file) {
-		this.file = file;
+	/**
+	 * Start fetching the existing downloads of all destinations in the
+	 * background, so the listing is ready by the time this task, or another
+	 * one configured the same way and with the same prefetch scope, is
+	 * executed
+	 */
+	public void prefetch() {
+		if (!overwrite)
+			return;
+		for (final Destination destination : getDestinations()) {
+			resolveDestination(destination);
+			ListingCache.prefetch(getPrefetchKey(destination),
+					new Callable<Map<String, Integer>>() {
+
+						public Map<String, Integer> call() {
+							return getExistingDownloads(getService(destination),
+									destination.repositoryId);
+						}
+					});
+		}
 	}
 
-	private List<FileSet> filesets = new ArrayList<FileSet>();
-	
-	public void addFileSet(FileSet fs) {
-		filesets.add(fs);
+	/**
+	 * Resolve host and repository of given destination, taking unset
+	 * attributes from this task. The client is only created by
+	 * {@link #getService(Destination)} when a request is made, so runs with
+	 * nothing to send never load the HTTP and JSON stack.
+	 *
+	 * @param destination
+	 */
+	protected void resolveDestination(Destination destination) {
+		if (StringUtils.isEmpty(destination.getHost()))
+			destination.setHost(host);
+		destination.repositoryId = getRepository(
+				or(destination.getOwner(), owner),
+				or(destination.getRepository(), repository));
+		destination.service = null;
 	}
 
 	/**
-	 * Get files to create downloads from
+	 * Get service of given resolved destination, creating its client on first
+	 * use
 	 *
-	 * @return non-null but possibly empty list of files
+	 * @param destination
+	 * @return service
 	 */
-	protected Collection<File> getFiles() {
-		List<File> files = new ArrayList<File>();
-		
-		if (filesets.size() == 0 && file != null) {
-			files.add(file);
-			return files;
-		}
-		
-		if (filesets.size() == 0 && this.files != null) {
-			for (File f: this.files) files.add(f);
-			return files;
-		}
-		
-		for (FileSet fs: filesets) {
-			for (Iterator<?> it = fs.iterator(); it.hasNext();) {
-				files.add((File) it.next());
+	protected DownloadService getService(Destination destination) {
+		synchronized (destination) {
+			if (destination.service == null) {
+				String username = this.username;
+				String password = this.password;
+				if (!StringUtils.isEmpty(destination.getUsername(),
+						destination.getPassword())) {
+					username = destination.getUsername();
+					password = destination.getPassword();
+				}
+				destination.service = new StreamingDownloadService(
+						createClient(or(destination.getHost(), host), username,
+								password,
+								or(destination.getOAuth2Token(), oauth2Token),
+								or(destination.getServer(), server)),
+						stallTimeout * 1000);
 			}
+			return destination.service;
 		}
-		
-		return files;
 	}
 
 	/**
-	 * Get file from artifact
+	 * Get existing downloads of given destination, sending a duplicate
+	 * listing request if the first is slower than the recent 95th percentile
+	 * of listings of the same repository, saved across runs
 	 *
-	 * @param artifact
-	 * @return existent artifact file or null
+	 * @param destination
+	 * @return map of existing downloads
 	 */
-	protected File getArtifactFile(Artifact artifact) {
-		if (artifact == null)
-			return null;
-		File file = artifact.getFile();
-		return file != null && file.isFile() && file.exists() ? file : null;
+	protected Map<String, Integer> getExistingDownloadsHedged(
+			final Destination destination) {
+		String key = "getDownloads " + destination.getKey();
+		File file = LatencyTracker.getFile(stateDir);
+		LatencyTracker tracker = LatencyTracker.get(key, file);
+		try {
+			return HedgedCall.call(new Callable<Map<String, Integer>>() {
+
+				public Map<String, Integer> call() {
+					return getExistingDownloads(getService(destination),
+							destination.repositoryId);
+				}
+			}, tracker, new Runnable() {
+
+				public void run() {
+					info("Listing downloads is slow, sending another request");
+				}
+			});
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		} finally {
+			try {
+				tracker.save(key, file);
+			} catch (IOException e) {
+				debug("Saving listing durations failed", e);
+			}
+		}
 	}
 
 	/**
-	 * Get map of existing downloads with names mapped to download identifiers.
+	 * Upload each file as its own download
 	 *
-	 * @param service
-	 * @param repository
-	 * @return map of existing downloads
-	 * @
+	 * @param destinations
+	 * @param files
 	 */
-	protected Map<String, Integer> getExistingDownloads(
-			DownloadService service, RepositoryId repository)
-			 {
-		try {
-			Map<String, Integer> existing = new HashMap<String, Integer>();
-			for (Download download : service.getDownloads(repository))
-				if (!StringUtils.isEmpty(download.getName()))
-					existing.put(download.getName(), download.getId());
-			if (isDebug()) {
-				final int size = existing.size();
-				if (size != 1)
-					debug(MessageFormat.format("Listed {0} existing downloads",
-							size));
+	protected void uploadFiles(final List<Destination> destinations,
+			Iterable<File> files) {
+		if (files instanceof Collection) {
+			Collection<File> all = (Collection<File>) files;
+			int fileCount = all.size();
+			for (Destination destination : destinations)
+				if (fileCount != 1)
+					info(MessageFormat.format(
+							"Adding {0} downloads to repository {1}",
+							fileCount, destination.repositoryId.generateId()));
 				else
-					debug("Listed 1 existing download");
+					info(MessageFormat.format(
+							"Adding 1 download to repository {0}",
+							destination.repositoryId.generateId()));
+
+			if (reporter != null) {
+				long total = 0;
+				for (File file : all)
+					total += getSize(file);
+				reporter.addTotal(total * destinations.size());
 			}
-			return existing;
-		} catch (IOException e) {
-			throw new IllegalStateException("Listing downloads failed: "
-					+ getExceptionMessage(e), e);
+
+			List<Callable<Void>> jobs = new ArrayList<Callable<Void>>(fileCount);
+			for (File file : all)
+				jobs.add(createUploadJob(destinations, file));
+			runAll(jobs);
+			return;
 		}
+
+		for (Destination destination : destinations)
+			info(MessageFormat.format("Adding downloads to repository {0}",
+					destination.repositoryId.generateId()));
+		// Files are only looked at when a thread is free to upload them
+		final Iterator<File> pending = files.iterator();
+		runAll(new Iterable<Callable<Void>>() {
+
+			public Iterator<Callable<Void>> iterator() {
+				return new Iterator<Callable<Void>>() {
+
+					public boolean hasNext() {
+						return pending.hasNext();
+					}
+
+					public Callable<Void> next() {
+						File file = pending.next();
+						if (reporter != null)
+							reporter.addTotal(getSize(file)
+									* destinations.size());
+						return createUploadJob(destinations, file);
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		});
 	}
 
-	private String getExceptionMessage(IOException e) {
-		return e != null && e.getMessage() != null ? e.getMessage() : (e != null ? e.toString() : null);
+	/**
+	 * Create job uploading given file to the destinations, taking the existing
+	 * downloads it replaces out of their listings
+	 *
+	 * @param destinations
+	 * @param file
+	 * @return job
+	 */
+	protected Callable<Void> createUploadJob(
+			final List<Destination> destinations, final File file) {
+		final String name = getDownloadName(file);
+		final Integer[] existingIds = new Integer[destinations.size()];
+		for (int i = 0; i < existingIds.length; i++)
+			existingIds[i] = destinations.get(i).existing.remove(name);
+		return new Callable<Void>() {
+
+			public Void call() {
+				if (!skipUnchanged) {
+					uploadFile(destinations, file, name, existingIds, null);
+					if (outbox)
+						completed.add(file);
+					return null;
+				}
+
+				String digest = getDigest(file);
+				long size = getSize(file);
+				List<Destination> changed = new ArrayList<Destination>();
+				List<Integer> changedIds = new ArrayList<Integer>();
+				for (int i = 0; i < existingIds.length; i++) {
+					Destination destination = destinations.get(i);
+					if (!destination.digests.isUnchanged(name, existingIds[i],
+							size, digest)) {
+						changed.add(destination);
+						changedIds.add(existingIds[i]);
+					}
+				}
+				if (reporter != null)
+					reporter.addTotal(-size
+							* (destinations.size() - changed.size()));
+				if (changed.isEmpty()) {
+					plan.addSkip();
+					info(MessageFormat.format(
+							"Skipping unchanged download: {0}", name));
+				} else
+					uploadFile(changed, file, name, changedIds
+							.toArray(new Integer[changedIds.size()]), digest);
+				if (outbox)
+					completed.add(file);
+				return null;
+			}
+		};
 	}
 
 	/**
-	 * Deleting existing download with given id and name
+	 * Get MD5 digest of given file, computing it unless it was given through
+	 * {@link #setDigests(Map)}
 	 *
-	 * @param repository
-	 * @param name
-	 * @param id
-	 * @param service
-	 * @
+	 * @param file
+	 * @return lower case hex digest
 	 */
-	protected void deleteDownload(RepositoryId repository, String name, int id,
-			DownloadService service)  {
+	protected String getDigest(File file) {
+		if (digests != null) {
+			String digest = digests.get(file);
+			if (digest != null)
+				return digest;
+		}
+		FlightEvents.Span span = FlightEvents.begin(FlightEvents.HASH);
 		try {
-			info(MessageFormat.format(
-					"Deleting existing download: {0} (id={1})", name,
-					Integer.toString(id)));
-			if (!dryRun)
-				service.deleteDownload(repository, id);
+			return DigestUtils.md5(file);
 		} catch (IOException e) {
-			String prefix = MessageFormat.format(
-					"Deleting existing download {0} failed: ", name);
+			String prefix = MessageFormat.format("Hashing {0} failed: ",
+					file.getName());
 			throw new IllegalStateException(prefix + getExceptionMessage(e), e);
+		} finally {
+			span.end(null, file.getName(), getSize(file));
 		}
 	}
 
-	public void execute() throws BuildException  {
-		RepositoryId repository = getRepository(owner, this.repository);
-
-		DownloadService service = new DownloadService(createClient(host, username, password, oauth2Token, server));
-
-		Map<String, Integer> existing;
-		if (overwrite) {
-			existing = getExistingDownloads(service, repository);
-			log("Got existing downloads: " + existing);
-		} else {
-			existing = Collections.emptyMap();
-		}
-
-		Collection<File> files = getFiles();
-
-		if (dryRun)
-			info("Dry run mode, downloads will not be deleted or uploaded");
-
-		int fileCount = files.size();
-		if (fileCount != 1)
-			info(MessageFormat.format("Adding {0} downloads to repository {1}",
-					fileCount, repository.generateId()));
-		else
-			info(MessageFormat.format("Adding 1 download to repository {0}",
-					repository.generateId()));
-
-		for (File file : files) {
-			String name = file.getName();
-			if (!StringUtils.isEmpty(suffix)) {
-				final int lastDot = name.lastIndexOf('.');
-				if (lastDot != -1)
-					name = name.substring(0, lastDot) + suffix
-							+ name.substring(lastDot);
-				else
-					name += suffix;
-			}
-
-			final long size = file.length();
-			Integer existingId = existing.remove(name);
-			if (existingId != null)
-				deleteDownload(repository, name, existingId, service);
-
-			Download download = new Download().setName(name).setSize(size);
-			if (!StringUtils.isEmpty(description))
-				download.setDescription(description);
-
-			if (size != 1)
-				info(MessageFormat.format("Adding download: {0} ({1} bytes)",
-						name, size));
-			else
-				info(MessageFormat
-						.format("Adding download: {0} (1 byte)", name));
-
-			if (!dryRun)
-				try {
-					service.createDownload(repository, download, file);
-				} catch (IOException e) {
-					String prefix = MessageFormat.format(
-							"Resource {0} upload failed: ", name);
-					throw new IllegalStateException(prefix
-							+ getExceptionMessage(e), e);
-				}
+	/**
+	 * Get size of given file, reading it from the file system unless it was
+	 * given through {@link #setSizes(Map)}
+	 *
+	 * @param file
+	 * @return size in bytes
+	 */
+	protected long getSize(File file) {
+		if (sizes != null) {
+			Long size = sizes.get(file);
+			if (size != null)
+				return size;
 		}
+		return file.length();
 	}
 	
 	
@@ -445,4 +2312,275 @@ public class GithubDownloadUploaderTask extends Task {
 	public void setServer(String server) {
 		this.server = server;
 	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public Integer getBandwidth() {
+		return bandwidth;
+	}
+
+	public void setBandwidth(int bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	public Integer getRepositoryBandwidth() {
+		return repositoryBandwidth;
+	}
+
+	public void setRepositoryBandwidth(int repositoryBandwidth) {
+		this.repositoryBandwidth = repositoryBandwidth;
+	}
+
+	public String getCompression() {
+		return compression;
+	}
+
+	public void setCompression(String compression) {
+		if (StringUtils.isEmpty(compression) || "none".equals(compression))
+			this.compression = null;
+		else if ("gzip".equals(compression) || "fast".equals(compression))
+			this.compression = compression;
+		else
+			throw new IllegalArgumentException("Unknown compression: "
+					+ compression + ", expected one of none, gzip, fast");
+	}
+
+	public String getCompressIncludes() {
+		return compressIncludes != null ? StringUtils.join(compressIncludes,
+				",") : null;
+	}
+
+	public void setCompressIncludes(String compressIncludes) {
+		this.compressIncludes = StringUtils.split(compressIncludes, ",");
+	}
+
+	public String getBundle() {
+		return bundle;
+	}
+
+	public void setBundle(String bundle) {
+		this.bundle = bundle;
+	}
+
+	public File getBaseDir() {
+		return baseDir;
+	}
+
+	public void setBaseDir(File baseDir) {
+		this.baseDir = baseDir;
+	}
+
+	public int getStallTimeout() {
+		return stallTimeout;
+	}
+
+	public void setStallTimeout(int stallTimeout) {
+		this.stallTimeout = stallTimeout;
+	}
+
+	public long getMinRate() {
+		return minRate;
+	}
+
+	public void setMinRate(long minRate) {
+		this.minRate = minRate;
+	}
+
+	public int getRetries() {
+		return retries;
+	}
+
+	public void setRetries(int retries) {
+		this.retries = retries;
+	}
+
+	public boolean isHedge() {
+		return hedge;
+	}
+
+	public void setHedge(boolean hedge) {
+		this.hedge = hedge;
+	}
+
+	public boolean isSkipUnchanged() {
+		return skipUnchanged;
+	}
+
+	public void setSkipUnchanged(boolean skipUnchanged) {
+		this.skipUnchanged = skipUnchanged;
+	}
+
+	public File getStateDir() {
+		return stateDir;
+	}
+
+	public void setStateDir(File stateDir) {
+		this.stateDir = stateDir;
+	}
+
+	/**
+	 * Set known MD5 digests of files to upload, saving the task from hashing
+	 * them for change detection
+	 *
+	 * @param digests
+	 *            lower case hex digests by file
+	 */
+	public void setDigests(Map<File, String> digests) {
+		this.digests = digests;
+	}
+
+	/**
+	 * Set known sizes of files to upload, such as from a listing made where
+	 * the files are, saving the task from reading them again
+	 *
+	 * @param sizes
+	 *            sizes in bytes by file
+	 */
+	public void setSizes(Map<File, Long> sizes) {
+		this.sizes = sizes;
+	}
+
+	public boolean isVerify() {
+		return verify;
+	}
+
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+
+	public File getSignKeyStore() {
+		return signKeyStore;
+	}
+
+	public void setSignKeyStore(File signKeyStore) {
+		this.signKeyStore = signKeyStore;
+	}
+
+	public String getSignStoreType() {
+		return signStoreType;
+	}
+
+	public void setSignStoreType(String signStoreType) {
+		this.signStoreType = signStoreType;
+	}
+
+	public void setSignStorePassword(String signStorePassword) {
+		this.signStorePassword = signStorePassword;
+	}
+
+	public String getSignKeyAlias() {
+		return signKeyAlias;
+	}
+
+	public void setSignKeyAlias(String signKeyAlias) {
+		this.signKeyAlias = signKeyAlias;
+	}
+
+	public void setSignKeyPassword(String signKeyPassword) {
+		this.signKeyPassword = signKeyPassword;
+	}
+
+	public String getSignKeyId() {
+		return signKeyId;
+	}
+
+	public void setSignKeyId(String signKeyId) {
+		this.signKeyId = signKeyId;
+	}
+
+	public int getProgress() {
+		return progress;
+	}
+
+	public void setProgress(int progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Set stream progress is reported to instead of the task log
+	 *
+	 * @param progressStream
+	 */
+	public void setProgressStream(PrintStream progressStream) {
+		this.progressStream = progressStream;
+	}
+
+	public String getPrefetchScope() {
+		return prefetchScope;
+	}
+
+	public void setPrefetchScope(String prefetchScope) {
+		this.prefetchScope = prefetchScope;
+	}
+
+	public boolean isLowMemory() {
+		return lowMemory;
+	}
+
+	public void setLowMemory(boolean lowMemory) {
+		this.lowMemory = lowMemory;
+	}
+
+	public boolean isOutbox() {
+		return outbox;
+	}
+
+	public void setOutbox(boolean outbox) {
+		this.outbox = outbox;
+	}
+
+	public int getReplayAttempts() {
+		return replayAttempts;
+	}
+
+	public void setReplayAttempts(int replayAttempts) {
+		this.replayAttempts = replayAttempts;
+	}
+
+	public int getReplayDelay() {
+		return replayDelay;
+	}
+
+	public void setReplayDelay(int replayDelay) {
+		this.replayDelay = replayDelay;
+	}
+
+	public boolean isPrune() {
+		return prune;
+	}
+
+	public void setPrune(boolean prune) {
+		this.prune = prune;
+	}
+
+	public int getDeleteThreads() {
+		return deleteThreads;
+	}
+
+	public void setDeleteThreads(int deleteThreads) {
+		this.deleteThreads = deleteThreads;
+	}
+
+	public String getOrder() {
+		return order.name().toLowerCase(Locale.ENGLISH);
+	}
+
+	public void setOrder(String order) {
+		this.order = UploadOrder.fromString(order);
+	}
+
+	public String getPriority() {
+		return priority != null ? StringUtils.join(priority, ",") : null;
+	}
+
+	public void setPriority(String priority) {
+		String[] patterns = StringUtils.split(priority, ",");
+		this.priority = patterns.length > 0 ? patterns : null;
+	}
 }
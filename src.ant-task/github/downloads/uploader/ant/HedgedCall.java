@@ -0,0 +1,92 @@
+package github.downloads.uploader.ant;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an idempotent request and, if it takes longer than the recent 95th
+ * percentile of the same request, sends a duplicate and uses whichever
+ * answers first.
+ */
+public class HedgedCall {
+
+	private static final ExecutorService executor = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "github-downloads-hedge");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Call given request, hedging it once it is slower than usual
+	 *
+	 * @param call
+	 * @param tracker
+	 *            durations of earlier calls of the same request
+	 * @param listener
+	 *            called when a duplicate request is sent, may be null
+	 * @return result of the first request to succeed
+	 * @throws Exception
+	 *             failure of the last request to fail if none succeeded
+	 */
+	public static <V> V call(final Callable<V> call,
+			final LatencyTracker tracker, Runnable listener) throws Exception {
+		Callable<V> timed = new Callable<V>() {
+
+			public V call() throws Exception {
+				long start = System.nanoTime();
+				V result = call.call();
+				tracker.record((System.nanoTime() - start) / 1000000);
+				return result;
+			}
+		};
+
+		long delay = tracker.getPercentile(95);
+		if (delay < 0)
+			return timed.call();
+
+		CompletionService<V> completion = new ExecutorCompletionService<V>(
+				executor);
+		Future<V> primary = completion.submit(timed);
+		Future<V> hedge = null;
+		try {
+			Future<V> done = completion.poll(delay, TimeUnit.MILLISECONDS);
+			int pending = 1;
+			if (done == null) {
+				if (listener != null)
+					listener.run();
+				hedge = completion.submit(timed);
+				pending = 2;
+			}
+			ExecutionException failure = null;
+			for (; pending > 0; pending--) {
+				if (done == null)
+					done = completion.take();
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					failure = e;
+				}
+				done = null;
+			}
+			Throwable cause = failure.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw (Error) cause;
+		} finally {
+			primary.cancel(true);
+			if (hedge != null)
+				hedge.cancel(true);
+		}
+	}
+}
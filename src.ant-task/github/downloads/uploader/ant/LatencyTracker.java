@@ -0,0 +1,167 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Recent durations of one kind of request, shared by the whole JVM.
+ * <p>
+ * Durations can be saved to a file and seed the tracker of a later JVM, so
+ * short runs such as Ant builds reach enough samples over several runs.
+ */
+public class LatencyTracker {
+
+	private static final int SAMPLES = 50;
+
+	/**
+	 * Fewest samples needed before a percentile is reported
+	 */
+	private static final int MIN_SAMPLES = 5;
+
+	private static final Map<String, LatencyTracker> trackers = new HashMap<String, LatencyTracker>();
+
+	private final long[] durations = new long[SAMPLES];
+
+	private int count;
+
+	private int next;
+
+	/**
+	 * Get tracker for given key
+	 *
+	 * @param key
+	 * @return non-null tracker
+	 */
+	public static synchronized LatencyTracker get(String key) {
+		LatencyTracker tracker = trackers.get(key);
+		if (tracker == null) {
+			tracker = new LatencyTracker();
+			trackers.put(key, tracker);
+		}
+		return tracker;
+	}
+
+	/**
+	 * Get tracker for given key, seeded with the durations saved to given file
+	 * by earlier runs if this JVM has not tracked the key yet
+	 *
+	 * @param key
+	 * @param file
+	 * @return non-null tracker
+	 */
+	public static synchronized LatencyTracker get(String key, File file) {
+		LatencyTracker tracker = trackers.get(key);
+		if (tracker != null)
+			return tracker;
+		tracker = get(key);
+		String saved = load(file).getProperty(key);
+		if (saved != null)
+			for (String duration : saved.split(","))
+				try {
+					tracker.record(Long.parseLong(duration.trim()));
+				} catch (NumberFormatException e) {
+					// Durations are only advisory
+				}
+		return tracker;
+	}
+
+	/**
+	 * Get file saving durations in given state directory
+	 *
+	 * @param dir
+	 * @return durations file
+	 */
+	public static File getFile(File dir) {
+		return new File(dir, "latency.properties");
+	}
+
+	private static Properties load(File file) {
+		Properties properties = new Properties();
+		if (file.isFile())
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					properties.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				properties.clear();
+			}
+		return properties;
+	}
+
+	/**
+	 * Save recent durations of this tracker under given key to given file,
+	 * keeping the durations of other keys
+	 *
+	 * @param key
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(String key, File file) throws IOException {
+		StringBuilder saved = new StringBuilder();
+		synchronized (this) {
+			for (int i = 0; i < count; i++) {
+				if (i > 0)
+					saved.append(',');
+				saved.append(durations[(next - count + i + SAMPLES) % SAMPLES]);
+			}
+		}
+		synchronized (LatencyTracker.class) {
+			Properties properties = load(file);
+			properties.setProperty(key, saved.toString());
+			File dir = file.getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Could not create directory " + dir);
+			File temp = new File(file.getPath() + ".tmp");
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				properties.store(out, "Recent request durations in milliseconds");
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file))
+					throw new IOException("Could not write " + file);
+			}
+		}
+	}
+
+	/**
+	 * Record duration of one request
+	 *
+	 * @param millis
+	 */
+	public synchronized void record(long millis) {
+		durations[next] = millis;
+		next = (next + 1) % SAMPLES;
+		if (count < SAMPLES)
+			count++;
+	}
+
+	/**
+	 * Get percentile of recent durations
+	 *
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return milliseconds, -1 if too few requests were recorded
+	 */
+	public synchronized long getPercentile(int percentile) {
+		if (count < MIN_SAMPLES)
+			return -1;
+		long[] sorted = Arrays.copyOf(durations, count);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+}
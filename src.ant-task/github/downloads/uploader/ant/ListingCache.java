@@ -0,0 +1,82 @@
+package github.downloads.uploader.ant;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Listings of existing downloads fetched ahead of the upload, such as at the
+ * start of a build. Each prefetched listing is used by at most one upload,
+ * keyed by the scope that prefetched it, and expires within minutes if
+ * nobody takes it: older listings would lead to deleting downloads that are
+ * gone or to creating downloads that already exist.
+ */
+public class ListingCache {
+
+	/**
+	 * Milliseconds a prefetched listing stays usable
+	 */
+	public static final long MAX_AGE = 15 * 60 * 1000L;
+
+	private static final ExecutorService executor = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "github-downloads-prefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private static class Listing {
+
+		final Future<Map<String, Integer>> future;
+
+		final long created = System.currentTimeMillis();
+
+		Listing(Future<Map<String, Integer>> future) {
+			this.future = future;
+		}
+	}
+
+	private static final Map<String, Listing> listings = new HashMap<String, Listing>();
+
+	/**
+	 * Start fetching listing in the background
+	 *
+	 * @param key
+	 *            scope, host and repository the listing belongs to
+	 * @param listing
+	 */
+	public static synchronized void prefetch(String key,
+			Callable<Map<String, Integer>> listing) {
+		long now = System.currentTimeMillis();
+		for (Iterator<Listing> it = listings.values().iterator(); it.hasNext();) {
+			Listing cached = it.next();
+			if (now - cached.created > MAX_AGE) {
+				cached.future.cancel(true);
+				it.remove();
+			}
+		}
+		listings.put(key, new Listing(executor.submit(listing)));
+	}
+
+	/**
+	 * Take prefetched listing
+	 *
+	 * @param key
+	 * @return listing, null if none was prefetched or it expired
+	 */
+	public static synchronized Future<Map<String, Integer>> take(String key) {
+		Listing listing = listings.remove(key);
+		if (listing == null
+				|| System.currentTimeMillis() - listing.created > MAX_AGE)
+			return null;
+		return listing.future;
+	}
+}
@@ -0,0 +1,181 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files of a run that failed or were never attempted, kept on disk for one
+ * destination so the next run for the same repository uploads them first.
+ * <p>
+ * Within a JVM that outlives the run, such as a Jenkins master, a task
+ * created from the settings of the failed one is also replayed in the
+ * background with growing delays until the outbox drains, the attempts run
+ * out or another run takes the outbox over.
+ */
+public class Outbox {
+
+	private static final String FILE = "file.";
+
+	private static final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "github-downloads-replay");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private static final Map<String, ScheduledFuture<?>> replays = new HashMap<String, ScheduledFuture<?>>();
+
+	/**
+	 * Get outbox file of given destination
+	 *
+	 * @param dir
+	 * @param key
+	 *            destination key
+	 * @return outbox file
+	 */
+	public static File getFile(File dir, String key) {
+		return new File(dir, key.replaceAll("[^A-Za-z0-9._-]", "_")
+				+ ".outbox");
+	}
+
+	/**
+	 * Read pending files from given outbox
+	 *
+	 * @param outbox
+	 * @return pending files in upload order, empty if there is no outbox
+	 * @throws IOException
+	 */
+	public static List<File> read(File outbox) throws IOException {
+		List<File> files = new ArrayList<File>();
+		if (!outbox.isFile())
+			return files;
+		Properties properties = load(outbox);
+		for (int i = 0;; i++) {
+			String path = properties.getProperty(FILE + i);
+			if (path == null)
+				return files;
+			files.add(new File(path));
+		}
+	}
+
+	/**
+	 * Read settings the pending files of given outbox were to be uploaded with
+	 *
+	 * @param outbox
+	 * @return settings, empty if there is no outbox
+	 * @throws IOException
+	 */
+	public static Map<String, String> readSettings(File outbox)
+			throws IOException {
+		Map<String, String> settings = new HashMap<String, String>();
+		if (!outbox.isFile())
+			return settings;
+		Properties properties = load(outbox);
+		for (String name : properties.stringPropertyNames())
+			if (!name.startsWith(FILE))
+				settings.put(name, properties.getProperty(name));
+		return settings;
+	}
+
+	private static Properties load(File outbox) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(outbox);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+	/**
+	 * Write pending files and the settings they were to be uploaded with to
+	 * given outbox, deleting it if there are no files
+	 *
+	 * @param outbox
+	 * @param files
+	 * @param settings
+	 *            settings a background replay uploads the files with
+	 * @throws IOException
+	 */
+	public static void write(File outbox, Collection<File> files,
+			Map<String, String> settings) throws IOException {
+		if (files.isEmpty()) {
+			if (outbox.exists() && !outbox.delete())
+				throw new IOException("Could not delete " + outbox);
+			return;
+		}
+
+		Properties properties = new Properties();
+		for (Map.Entry<String, String> setting : settings.entrySet())
+			if (setting.getValue() != null)
+				properties.setProperty(setting.getKey(), setting.getValue());
+		int index = 0;
+		for (File file : files)
+			properties.setProperty(FILE + index++, file.getAbsolutePath());
+
+		File dir = outbox.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create directory " + dir);
+		File temp = new File(outbox.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			properties.store(out, "Pending uploads");
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(outbox)) {
+			outbox.delete();
+			if (!temp.renameTo(outbox))
+				throw new IOException("Could not write " + outbox);
+		}
+	}
+
+	/**
+	 * Schedule background replay, replacing any replay scheduled for the
+	 * same key
+	 *
+	 * @param key
+	 *            key of the destination being replayed
+	 * @param replay
+	 * @param delay
+	 *            milliseconds to wait before replaying
+	 */
+	public static synchronized void schedule(String key, Runnable replay,
+			long delay) {
+		ScheduledFuture<?> previous = replays.put(key,
+				timer.schedule(replay, delay, TimeUnit.MILLISECONDS));
+		if (previous != null)
+			previous.cancel(false);
+	}
+
+	/**
+	 * Cancel replay scheduled for given key, if it has not started yet
+	 *
+	 * @param key
+	 *            destination key
+	 */
+	public static synchronized void cancel(String key) {
+		ScheduledFuture<?> replay = replays.remove(key);
+		if (replay != null)
+			replay.cancel(false);
+	}
+}
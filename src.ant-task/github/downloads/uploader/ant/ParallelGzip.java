@@ -0,0 +1,332 @@
+package github.downloads.uploader.ant;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Block parallel gzip compression.
+ * <p>
+ * The file is cut into blocks which are compressed on the given executor,
+ * each into its own gzip member. Concatenated members form a valid gzip
+ * stream that gzip and {@link java.util.zip.GZIPInputStream} decode as one
+ * file. The download size must be known before the upload starts, so a file
+ * is compressed completely first: small results are kept in memory and
+ * larger ones are written to a temporary file once they pass the memory
+ * limit, so each file being compressed holds at most the limit and the
+ * blocks in flight.
+ */
+public class ParallelGzip {
+
+	/**
+	 * Uncompressed size of one block
+	 */
+	public static final int BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * Default compressed bytes of one file kept in memory
+	 */
+	public static final long MEMORY_LIMIT = 4 * BLOCK_SIZE;
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED,
+			0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	/**
+	 * Compressed content of one file, in memory or in a temporary file
+	 */
+	public static class Compressed implements UploadSource {
+
+		private final long memoryLimit;
+
+		private List<byte[]> blocks = new ArrayList<byte[]>();
+
+		private File spill;
+
+		private OutputStream out;
+
+		private long length;
+
+		Compressed(long memoryLimit) {
+			this.memoryLimit = memoryLimit;
+		}
+
+		/**
+		 * Append gzip member, moving the content to a temporary file once it
+		 * passes the memory limit
+		 *
+		 * @param member
+		 * @throws IOException
+		 */
+		void add(byte[] member) throws IOException {
+			if (out == null && length + member.length > memoryLimit) {
+				spill = File.createTempFile("github-downloads", ".gz");
+				spill.deleteOnExit();
+				out = new BufferedOutputStream(new FileOutputStream(spill));
+				for (byte[] block : blocks)
+					out.write(block);
+				blocks = null;
+			}
+			if (out != null)
+				out.write(member);
+			else
+				blocks.add(member);
+			length += member.length;
+		}
+
+		/**
+		 * Finish adding members
+		 *
+		 * @throws IOException
+		 */
+		void finish() throws IOException {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+		}
+
+		/**
+		 * @return compressed length in bytes
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * @return whether the content was written to a temporary file
+		 */
+		public boolean isSpilled() {
+			return spill != null;
+		}
+
+		/**
+		 * @return new stream over the compressed content
+		 * @throws IOException
+		 */
+		public InputStream openStream() throws IOException {
+			if (spill != null)
+				return new BufferedInputStream(new FileInputStream(spill));
+			List<InputStream> streams = new ArrayList<InputStream>(
+					blocks.size());
+			for (byte[] block : blocks)
+				streams.add(new ByteArrayInputStream(block));
+			return new SequenceInputStream(Collections.enumeration(streams));
+		}
+
+		/**
+		 * Release the compressed content once it is no longer read
+		 */
+		public void release() {
+			if (out != null)
+				try {
+					out.close();
+				} catch (IOException e) {
+					// Deleted anyway
+				}
+			out = null;
+			blocks = Collections.emptyList();
+			if (spill != null)
+				spill.delete();
+		}
+	}
+
+	private final ExecutorService executor;
+
+	private final int level;
+
+	private final int maxPending;
+
+	private final long memoryLimit;
+
+	/**
+	 * Create compressor
+	 *
+	 * @param executor
+	 *            executor running block compression
+	 * @param level
+	 *            deflate level, see {@link Deflater}
+	 * @param threads
+	 *            number of executor threads, bounds the blocks read ahead
+	 */
+	public ParallelGzip(ExecutorService executor, int level, int threads) {
+		this(executor, level, threads, MEMORY_LIMIT);
+	}
+
+	/**
+	 * Create compressor
+	 *
+	 * @param executor
+	 *            executor running block compression
+	 * @param level
+	 *            deflate level, see {@link Deflater}
+	 * @param threads
+	 *            number of executor threads, bounds the blocks read ahead
+	 * @param memoryLimit
+	 *            compressed bytes of one file kept in memory
+	 */
+	public ParallelGzip(ExecutorService executor, int level, int threads,
+			long memoryLimit) {
+		this.executor = executor;
+		this.level = level;
+		this.maxPending = Math.max(2, threads * 2);
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Compress given file
+	 *
+	 * @param file
+	 * @return compressed content
+	 * @throws IOException
+	 */
+	public Compressed compress(File file) throws IOException {
+		return compress(new FileInputStream(file));
+	}
+
+	/**
+	 * Compress given source
+	 *
+	 * @param source
+	 * @return compressed content
+	 * @throws IOException
+	 */
+	public Compressed compress(UploadSource source) throws IOException {
+		return compress(source.openStream());
+	}
+
+	/**
+	 * Compress and close given stream
+	 *
+	 * @param in
+	 * @return compressed content, to be released once uploaded
+	 * @throws IOException
+	 */
+	public Compressed compress(InputStream in) throws IOException {
+		Compressed compressed = new Compressed(memoryLimit);
+		LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+		boolean done = false;
+		try {
+			boolean empty = true;
+			while (true) {
+				final byte[] block = readBlock(in);
+				if (block == null)
+					break;
+				empty = false;
+				pending.add(executor.submit(new Callable<byte[]>() {
+
+					public byte[] call() {
+						return compressBlock(block, level);
+					}
+				}));
+				if (pending.size() >= maxPending)
+					compressed.add(get(pending.removeFirst()));
+			}
+			while (!pending.isEmpty())
+				compressed.add(get(pending.removeFirst()));
+			if (empty)
+				compressed.add(compressBlock(new byte[0], level));
+			compressed.finish();
+			done = true;
+		} finally {
+			for (Future<byte[]> future : pending)
+				future.cancel(true);
+			if (!done)
+				compressed.release();
+			in.close();
+		}
+		return compressed;
+	}
+
+	private static byte[] readBlock(InputStream in) throws IOException {
+		byte[] block = new byte[BLOCK_SIZE];
+		int length = 0;
+		for (int read; length < block.length
+				&& (read = in.read(block, length, block.length - length)) != -1;)
+			length += read;
+		if (length == 0)
+			return null;
+		if (length < block.length) {
+			byte[] last = new byte[length];
+			System.arraycopy(block, 0, last, 0, length);
+			return last;
+		}
+		return block;
+	}
+
+	private static byte[] get(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing");
+		} catch (ExecutionException e) {
+			throw new IOException("Compression failed: "
+					+ e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Compress block into a complete gzip member
+	 *
+	 * @param block
+	 * @param level
+	 * @return gzip member bytes
+	 */
+	static byte[] compressBlock(byte[] block, int level) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(block);
+			deflater.finish();
+			// Incompressible input grows by a few bytes per 16K stored block
+			byte[] out = new byte[HEADER.length + block.length + block.length
+					/ 16000 * 5 + 64 + 8];
+			System.arraycopy(HEADER, 0, out, 0, HEADER.length);
+			int length = HEADER.length;
+			while (!deflater.finished()) {
+				if (length == out.length - 8) {
+					byte[] grown = new byte[out.length * 2];
+					System.arraycopy(out, 0, grown, 0, length);
+					out = grown;
+				}
+				length += deflater.deflate(out, length, out.length - 8
+						- length);
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(block);
+			length = writeInt(out, length, (int) crc.getValue());
+			length = writeInt(out, length, block.length);
+
+			byte[] member = new byte[length];
+			System.arraycopy(out, 0, member, 0, length);
+			return member;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static int writeInt(byte[] out, int offset, int value) {
+		out[offset++] = (byte) value;
+		out[offset++] = (byte) (value >> 8);
+		out[offset++] = (byte) (value >> 16);
+		out[offset++] = (byte) (value >> 24);
+		return offset;
+	}
+}
@@ -22,6 +22,7 @@
 package github.downloads.uploader.ant;
 
 import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
 
 /**
  * Path utilities
@@ -50,4 +51,19 @@ public class PathUtils {
 		scanner.scan();
 		return scanner.getIncludedFiles();
 	}
+
+	/**
+	 * Does given name match any of given Ant style patterns?
+	 *
+	 * @param name
+	 * @param patterns
+	 * @return true if any pattern matches, false otherwise
+	 */
+	public static boolean matchesAny(final String name, final String[] patterns) {
+		if (patterns != null)
+			for (String pattern : patterns)
+				if (SelectorUtils.match(pattern, name))
+					return true;
+		return false;
+	}
 }
@@ -0,0 +1,178 @@
+package github.downloads.uploader.ant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic progress report of the transfers of one run: percent, rate and
+ * remaining time of each file and of the whole run.
+ * <p>
+ * Transfers are only sampled through the byte counts their
+ * {@link TransferMonitor} keeps anyway, so reading content costs nothing
+ * extra and the log gets one line per file every interval however small the
+ * chunks are.
+ */
+public abstract class ProgressReporter {
+
+	private static final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "github-downloads-progress");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Transfer being reported
+	 */
+	public static class Transfer {
+
+		final String name;
+
+		final TransferMonitor monitor;
+
+		long lastBytes;
+
+		Transfer(String name, TransferMonitor monitor) {
+			this.name = name;
+			this.monitor = monitor;
+		}
+	}
+
+	private final long interval;
+
+	private final List<Transfer> active = new ArrayList<Transfer>();
+
+	private long total;
+
+	private long finished;
+
+	private long lastDone;
+
+	private long lastTime = System.nanoTime();
+
+	private ScheduledFuture<?> task;
+
+	/**
+	 * Create reporter
+	 *
+	 * @param interval
+	 *            milliseconds between reports
+	 */
+	public ProgressReporter(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * Print one line of the report
+	 *
+	 * @param line
+	 */
+	protected abstract void print(String line);
+
+	/**
+	 * Start reporting
+	 */
+	public synchronized void start() {
+		task = timer.scheduleAtFixedRate(new Runnable() {
+
+			public void run() {
+				report();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop reporting
+	 */
+	public synchronized void stop() {
+		if (task != null)
+			task.cancel(false);
+	}
+
+	/**
+	 * Add to the bytes the whole run is expected to send, negative to remove
+	 *
+	 * @param bytes
+	 */
+	public synchronized void addTotal(long bytes) {
+		total += bytes;
+	}
+
+	/**
+	 * Start reporting transfer
+	 *
+	 * @param name
+	 * @param monitor
+	 * @return handle to pass to {@link #finish(Transfer, boolean)}
+	 */
+	public synchronized Transfer register(String name, TransferMonitor monitor) {
+		Transfer transfer = new Transfer(name, monitor);
+		active.add(transfer);
+		return transfer;
+	}
+
+	/**
+	 * Stop reporting transfer
+	 *
+	 * @param transfer
+	 * @param success
+	 *            whether the bytes sent count towards the run; failed
+	 *            attempts are sent again
+	 */
+	public synchronized void finish(Transfer transfer, boolean success) {
+		active.remove(transfer);
+		long bytes = transfer.monitor.getTransferred();
+		if (success)
+			finished += bytes;
+		else
+			lastDone -= bytes;
+	}
+
+	private static String describe(String name, long done, long expected,
+			long rate) {
+		StringBuilder line = new StringBuilder(name).append(": ");
+		if (expected > 0)
+			line.append(Math.min(100, done * 100 / expected)).append("% of ")
+					.append(PublishPlan.formatBytes(expected));
+		else
+			line.append(PublishPlan.formatBytes(done));
+		line.append(", ").append(PublishPlan.formatBytes(rate)).append("/s");
+		if (rate > 0 && expected > done)
+			line.append(", ETA ").append(
+					PublishPlan.formatDuration((expected - done) * 1000 / rate));
+		return line.toString();
+	}
+
+	/**
+	 * Print progress of all active transfers and of the run
+	 */
+	public synchronized void report() {
+		if (active.isEmpty())
+			return;
+		long now = System.nanoTime();
+		long elapsed = Math.max(1, (now - lastTime) / 1000000);
+		lastTime = now;
+
+		long done = finished;
+		for (Transfer transfer : active) {
+			long bytes = transfer.monitor.getTransferred();
+			done += bytes;
+			long rate = (bytes - transfer.lastBytes) * 1000 / elapsed;
+			transfer.lastBytes = bytes;
+			print(describe(transfer.name, bytes,
+					transfer.monitor.getExpected(), rate));
+		}
+		long rate = Math.max(0, done - lastDone) * 1000 / elapsed;
+		lastDone = done;
+		if (total > 0 && (active.size() > 1 || finished > 0))
+			print(describe("Total", done, total, rate));
+	}
+}
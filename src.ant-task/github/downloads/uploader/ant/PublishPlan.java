@@ -0,0 +1,263 @@
+package github.downloads.uploader.ant;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tally of what a run does or, in a dry run, would do: downloads added,
+ * replaced and skipped, bytes sent and API requests made per host.
+ * <p>
+ * A run also times the posts of content to storage per host, counting the
+ * time any content was being sent, so the throughput recorded excludes
+ * compression, signing, hashing and verification.
+ */
+public class PublishPlan {
+
+	private int added;
+
+	private int replaced;
+
+	private int skipped;
+
+	private int deleted;
+
+	private int requests;
+
+	private final Map<String, Long> bytes = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Whether some sizes are before compression, as a dry run does not
+	 * compress
+	 */
+	private boolean uncompressed;
+
+	private static class Transfers {
+
+		int active;
+
+		long since;
+
+		long millis;
+
+		long bytes;
+	}
+
+	private final Map<String, Transfers> transfers = new LinkedHashMap<String, Transfers>();
+
+	/**
+	 * Count upload of a download to given host
+	 *
+	 * @param host
+	 * @param size
+	 * @param replacing
+	 *            whether an existing download is deleted first
+	 * @param verifying
+	 *            whether the stored download is checked afterwards
+	 */
+	public synchronized void addUpload(String host, long size,
+			boolean replacing, boolean verifying) {
+		if (replacing) {
+			replaced++;
+			requests++;
+		} else
+			added++;
+		// Create the resource, then post the content to storage
+		requests += 2;
+		if (verifying)
+			requests += 2;
+		Long sent = bytes.get(host);
+		bytes.put(host, (sent != null ? sent : 0) + size);
+	}
+
+	/**
+	 * Note that some counted sizes are before compression
+	 */
+	public synchronized void setUncompressed() {
+		uncompressed = true;
+	}
+
+	/**
+	 * @return whether some counted sizes are before compression
+	 */
+	public synchronized boolean isUncompressed() {
+		return uncompressed;
+	}
+
+	/**
+	 * Note start of sending content to given host
+	 *
+	 * @param host
+	 */
+	public synchronized void startTransfer(String host) {
+		Transfers current = transfers.get(host);
+		if (current == null) {
+			current = new Transfers();
+			transfers.put(host, current);
+		}
+		if (current.active++ == 0)
+			current.since = System.nanoTime();
+	}
+
+	/**
+	 * Note end of sending content to given host
+	 *
+	 * @param host
+	 * @param sent
+	 *            bytes sent
+	 */
+	public synchronized void endTransfer(String host, long sent) {
+		Transfers current = transfers.get(host);
+		current.bytes += sent;
+		if (--current.active == 0)
+			current.millis += (System.nanoTime() - current.since) / 1000000;
+	}
+
+	/**
+	 * @return hosts content was sent to
+	 */
+	public synchronized List<String> getTransferHosts() {
+		return new ArrayList<String>(transfers.keySet());
+	}
+
+	/**
+	 * @param host
+	 * @return milliseconds any content was being sent to given host
+	 */
+	public synchronized long getTransferMillis(String host) {
+		Transfers current = transfers.get(host);
+		return current != null ? current.millis : 0;
+	}
+
+	/**
+	 * @param host
+	 * @return bytes of content sent to given host
+	 */
+	public synchronized long getTransferredBytes(String host) {
+		Transfers current = transfers.get(host);
+		return current != null ? current.bytes : 0;
+	}
+
+	/**
+	 * Count file skipped as unchanged
+	 */
+	public synchronized void addSkip() {
+		skipped++;
+	}
+
+	/**
+	 * Count downloads deleted when pruning
+	 *
+	 * @param count
+	 */
+	public synchronized void addDeletes(int count) {
+		deleted += count;
+		requests += count;
+	}
+
+	/**
+	 * Count other API requests, such as listings
+	 *
+	 * @param count
+	 */
+	public synchronized void addRequests(int count) {
+		requests += count;
+	}
+
+	/**
+	 * @return hosts uploaded to
+	 */
+	public synchronized List<String> getHosts() {
+		return new ArrayList<String>(bytes.keySet());
+	}
+
+	/**
+	 * @param host
+	 * @return bytes sent to given host
+	 */
+	public synchronized long getBytes(String host) {
+		Long sent = bytes.get(host);
+		return sent != null ? sent : 0;
+	}
+
+	/**
+	 * @return bytes sent to all hosts
+	 */
+	public synchronized long getBytes() {
+		long total = 0;
+		for (long sent : bytes.values())
+			total += sent;
+		return total;
+	}
+
+	/**
+	 * Estimate duration from recorded throughput. Hosts are uploaded to
+	 * concurrently, so the slowest one decides.
+	 *
+	 * @param history
+	 * @return milliseconds, -1 if a host has no recorded throughput
+	 */
+	public synchronized long getEstimatedMillis(ThroughputHistory history) {
+		long estimate = 0;
+		for (Map.Entry<String, Long> sent : bytes.entrySet()) {
+			if (sent.getValue() == 0)
+				continue;
+			long rate = history.getRate(sent.getKey());
+			if (rate <= 0)
+				return -1;
+			estimate = Math.max(estimate, sent.getValue() * 1000 / rate);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Format byte count for humans
+	 *
+	 * @param bytes
+	 * @return size with unit
+	 */
+	public static String formatBytes(long bytes) {
+		if (bytes < 1024)
+			return bytes + " B";
+		String[] units = { "KB", "MB", "GB", "TB" };
+		double value = bytes;
+		int unit = -1;
+		while (value >= 1024 && unit < units.length - 1) {
+			value /= 1024;
+			unit++;
+		}
+		return String.format("%.1f %s", value, units[unit]);
+	}
+
+	/**
+	 * Format duration for humans
+	 *
+	 * @param millis
+	 * @return duration in hours, minutes and seconds
+	 */
+	public static String formatDuration(long millis) {
+		long seconds = (millis + 999) / 1000;
+		if (seconds < 60)
+			return seconds + "s";
+		if (seconds < 3600)
+			return seconds / 60 + "m " + seconds % 60 + "s";
+		return seconds / 3600 + "h " + seconds / 60 % 60 + "m";
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder summary = new StringBuilder();
+		summary.append(added).append(" to add, ").append(replaced)
+				.append(" to replace, ").append(skipped)
+				.append(" unchanged");
+		if (deleted > 0)
+			summary.append(", ").append(deleted).append(" to prune");
+		summary.append("; ").append(formatBytes(getBytes()));
+		if (uncompressed)
+			summary.append(" before compression");
+		summary.append(" to transfer in ").append(requests)
+				.append(" requests");
+		return summary.toString();
+	}
+}
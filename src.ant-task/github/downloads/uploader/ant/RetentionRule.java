@@ -0,0 +1,131 @@
+package github.downloads.uploader.ant;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.eclipse.egit.github.core.Download;
+
+/**
+ * Retention rule for existing downloads, declared as a nested retain element
+ * of the uploader task.
+ * <p>
+ * Each download is governed by the first rule whose pattern matches its name;
+ * downloads matching no rule are kept. A rule deletes matching downloads
+ * beyond the newest {@link #setKeep(int) keep} and those older than
+ * {@link #setMaxAge(int) maxAge} days. Age is only known for downloads
+ * listed as {@link DatedDownload}s.
+ */
+public class RetentionRule {
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private String pattern = "*";
+
+	private int keep;
+
+	private int maxAge;
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @param pattern
+	 *            Ant style pattern matched against download names
+	 */
+	public void setPattern(String pattern) {
+		this.pattern = pattern;
+	}
+
+	public int getKeep() {
+		return keep;
+	}
+
+	/**
+	 * @param keep
+	 *            number of newest matching downloads to keep, zero for no
+	 *            limit
+	 */
+	public void setKeep(int keep) {
+		this.keep = keep;
+	}
+
+	public int getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * @param maxAge
+	 *            age in days after which matching downloads are deleted, zero
+	 *            for no limit
+	 */
+	public void setMaxAge(int maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Select downloads to delete
+	 *
+	 * @param downloads
+	 * @param rules
+	 * @param now
+	 *            current time in milliseconds
+	 * @return downloads to delete, newest first within each rule
+	 */
+	public static List<Download> select(Collection<Download> downloads,
+			List<RetentionRule> rules, long now) {
+		Map<RetentionRule, List<Download>> groups = new LinkedHashMap<RetentionRule, List<Download>>();
+		for (RetentionRule rule : rules)
+			groups.put(rule, new ArrayList<Download>());
+		for (Download download : downloads) {
+			String name = download.getName();
+			if (name == null)
+				continue;
+			for (RetentionRule rule : rules)
+				if (SelectorUtils.match(rule.pattern, name)) {
+					groups.get(rule).add(download);
+					break;
+				}
+		}
+
+		List<Download> delete = new ArrayList<Download>();
+		for (Map.Entry<RetentionRule, List<Download>> group : groups
+				.entrySet()) {
+			RetentionRule rule = group.getKey();
+			List<Download> matched = group.getValue();
+			Collections.sort(matched, NEWEST_FIRST);
+			for (int i = 0; i < matched.size(); i++) {
+				Download download = matched.get(i);
+				Date created = DatedDownload.getCreatedAt(download);
+				if ((rule.keep > 0 && i >= rule.keep)
+						|| (rule.maxAge > 0 && created != null && now
+								- created.getTime() > rule.maxAge * DAY))
+					delete.add(download);
+			}
+		}
+		return delete;
+	}
+
+	/**
+	 * Newest first by creation time, falling back to ids which increase with
+	 * creation
+	 */
+	private static final Comparator<Download> NEWEST_FIRST = new Comparator<Download>() {
+
+		public int compare(Download a, Download b) {
+			Date ca = DatedDownload.getCreatedAt(a);
+			Date cb = DatedDownload.getCreatedAt(b);
+			if (ca != null && cb != null && !ca.equals(cb))
+				return cb.compareTo(ca);
+			return a.getId() == b.getId() ? 0 : a.getId() > b.getId() ? -1
+					: 1;
+		}
+	};
+}
@@ -0,0 +1,72 @@
+package github.downloads.uploader.ant;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts transfers whose throughput stays below a threshold for a whole
+ * window while content is still being sent. One daemon thread checks all
+ * watched transfers of the JVM.
+ */
+public class StallWatchdog {
+
+	private static final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "github-downloads-watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Start watching given transfer
+	 *
+	 * @param monitor
+	 * @param minRate
+	 *            least bytes per second a transfer must average over the
+	 *            window
+	 * @param window
+	 *            window in milliseconds
+	 * @param listener
+	 *            called after the transfer is aborted, may be null
+	 * @return handle to cancel once the transfer is done
+	 */
+	public static ScheduledFuture<?> watch(final TransferMonitor monitor,
+			final long minRate, final long window, final Runnable listener) {
+		final long minBytes = Math.max(1, minRate * window / 1000);
+		final long period = Math.max(1, window / 4);
+		final long[] samples = new long[5];
+		final long[] times = new long[5];
+		long now = System.nanoTime();
+		for (int i = 0; i < samples.length; i++)
+			times[i] = now;
+		return timer.scheduleAtFixedRate(new Runnable() {
+
+			private int next;
+
+			public void run() {
+				long transferred = monitor.getTransferred();
+				// Once all content is sent the read timeout covers the response
+				if (monitor.isAborted() || transferred >= monitor.getExpected())
+					return;
+				long time = System.nanoTime();
+				// Oldest sample is a full window ago once all slots are used
+				int oldest = next;
+				boolean full = (time - times[oldest]) / 1000000 >= window;
+				if (full && transferred - samples[oldest] < minBytes) {
+					monitor.abort();
+					if (listener != null)
+						listener.run();
+				}
+				samples[next] = transferred;
+				times[next] = time;
+				next = (next + 1) % samples.length;
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+}
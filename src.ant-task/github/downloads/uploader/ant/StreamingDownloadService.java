@@ -0,0 +1,246 @@
+package github.downloads.uploader.ant;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.eclipse.egit.github.core.client.IGitHubConstants.SEGMENT_DOWNLOADS;
+import static org.eclipse.egit.github.core.client.IGitHubConstants.SEGMENT_REPOS;
+
+import org.eclipse.egit.github.core.Download;
+import org.eclipse.egit.github.core.DownloadResource;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.PagedRequest;
+import org.eclipse.egit.github.core.service.DownloadService;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Download service streaming content straight to the socket.
+ * <p>
+ * The stock service posts the content through a connection that buffers the
+ * whole request body in memory before sending it. This one declares the body
+ * length up front so bytes are read from the content stream only as fast as
+ * the network takes them, which keeps memory flat and lets a
+ * {@link TransferMonitor} see real progress and abort a stalled transfer.
+ * Listed downloads are {@link DatedDownload}s carrying their creation time.
+ */
+public class StreamingDownloadService extends DownloadService {
+
+	private static final String BOUNDARY = "00content0boundary00";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final int timeout;
+
+	/**
+	 * Create service
+	 *
+	 * @param client
+	 * @param timeout
+	 *            connect and read timeout of the upload connection in
+	 *            milliseconds, zero for none
+	 */
+	public StreamingDownloadService(GitHubClient client, int timeout) {
+		super(client);
+		this.timeout = timeout;
+	}
+
+	private static byte[] utf8(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] partHeader(String name) {
+		return utf8("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\""
+				+ name + "\"\r\n\r\n");
+	}
+
+	/**
+	 * Stream request body of given length instead of buffering it. Bodies of
+	 * 2 GB and more are declared through the long variant added in Java 7,
+	 * or else sent in chunks.
+	 *
+	 * @param connection
+	 * @param length
+	 */
+	static void setStreamingMode(HttpURLConnection connection, long length) {
+		if (length <= Integer.MAX_VALUE) {
+			connection.setFixedLengthStreamingMode((int) length);
+			return;
+		}
+		try {
+			HttpURLConnection.class.getMethod("setFixedLengthStreamingMode",
+					long.class).invoke(connection, length);
+		} catch (Exception e) {
+			connection.setChunkedStreamingMode(BUFFER_SIZE);
+		}
+	}
+
+	@Override
+	public List<Download> getDownloads(IRepositoryIdProvider repository)
+			throws IOException {
+		PagedRequest<Download> request = createPagedRequest();
+		request.setUri(SEGMENT_REPOS + '/' + getId(repository)
+				+ SEGMENT_DOWNLOADS);
+		request.setType(new TypeToken<List<DatedDownload>>() {
+		}.getType());
+		return getAll(request);
+	}
+
+	@Override
+	public void uploadResource(DownloadResource resource, InputStream content,
+			long size) throws IOException {
+		if (resource == null)
+			throw new IllegalArgumentException(
+					"Download resource cannot be null");
+		if (content == null)
+			throw new IllegalArgumentException(
+					"Content input stream cannot be null");
+
+		Map<String, String> fields = new LinkedHashMap<String, String>();
+		fields.put(UPLOAD_KEY, resource.getPath());
+		fields.put(UPLOAD_ACL, resource.getAcl());
+		fields.put(UPLOAD_SUCCESS_ACTION_STATUS,
+				Integer.toString(HttpURLConnection.HTTP_CREATED));
+		fields.put(UPLOAD_FILENAME, resource.getName());
+		fields.put(UPLOAD_AWS_ACCESS_KEY_ID, resource.getAccesskeyid());
+		fields.put(UPLOAD_POLICY, resource.getPolicy());
+		fields.put(UPLOAD_SIGNATURE, resource.getSignature());
+		fields.put(UPLOAD_CONTENT_TYPE, resource.getMimeType());
+
+		byte[] newline = utf8("\r\n");
+		byte[] fileHeader = partHeader(UPLOAD_FILE);
+		byte[] end = utf8("--" + BOUNDARY + "--\r\n");
+		long length = fileHeader.length + size + newline.length + end.length;
+		Map<byte[], byte[]> parts = new LinkedHashMap<byte[], byte[]>();
+		for (Map.Entry<String, String> field : fields.entrySet()) {
+			byte[] header = partHeader(field.getKey());
+			byte[] value = utf8(String.valueOf(field.getValue()));
+			parts.put(header, value);
+			length += header.length + value.length + newline.length;
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(
+				resource.getS3Url()).openConnection();
+		if (content instanceof TransferMonitor)
+			((TransferMonitor) content).setConnection(connection);
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			connection.setRequestProperty("Content-Type",
+					"multipart/form-data; boundary=" + BOUNDARY);
+			setStreamingMode(connection, length);
+
+			OutputStream out = new BufferedOutputStream(
+					connection.getOutputStream(), BUFFER_SIZE);
+			try {
+				for (Map.Entry<byte[], byte[]> part : parts.entrySet()) {
+					out.write(part.getKey());
+					out.write(part.getValue());
+					out.write(newline);
+				}
+				out.write(fileHeader);
+				byte[] buffer = new byte[BUFFER_SIZE];
+				long remaining = size;
+				while (remaining > 0) {
+					int read = content.read(buffer, 0,
+							(int) Math.min(buffer.length, remaining));
+					if (read == -1)
+						throw new IOException("Content ended " + remaining
+								+ " bytes before the declared size");
+					out.write(buffer, 0, read);
+					remaining -= read;
+				}
+				out.write(newline);
+				out.write(end);
+			} finally {
+				content.close();
+				out.close();
+			}
+
+			int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_CREATED)
+				throw new IOException("Unexpected response status of " + status);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Length and digest of stored content
+	 */
+	public static class StoredContent {
+
+		/**
+		 * Length in bytes, -1 if not reported
+		 */
+		public final long length;
+
+		/**
+		 * Lower case hex MD5 digest, null if the entity tag is not a plain MD5
+		 */
+		public final String md5;
+
+		StoredContent(long length, String md5) {
+			this.length = length;
+			this.md5 = md5;
+		}
+	}
+
+	/**
+	 * Get length and MD5 digest the storage reports for the content at given
+	 * URL as its content length and entity tag, following redirects
+	 *
+	 * @param url
+	 * @param timeout
+	 *            connect and read timeout in milliseconds, zero for none
+	 * @return stored content
+	 * @throws IOException
+	 */
+	public static StoredContent getStoredContent(String url, int timeout)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url)
+				.openConnection();
+		try {
+			connection.setRequestMethod("HEAD");
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK)
+				throw new IOException("Unexpected response status of "
+						+ status);
+			long length = -1;
+			String header = connection.getHeaderField("Content-Length");
+			if (header != null)
+				try {
+					length = Long.parseLong(header.trim());
+				} catch (NumberFormatException e) {
+					length = -1;
+				}
+			String tag = connection.getHeaderField("ETag");
+			if (tag != null) {
+				tag = tag.replace("\"", "").toLowerCase(Locale.US);
+				if (!tag.matches("[0-9a-f]{32}"))
+					tag = null;
+			}
+			return new StoredContent(length, tag);
+		} finally {
+			connection.disconnect();
+		}
+	}
+}
@@ -23,6 +23,7 @@ package github.downloads.uploader.ant;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * String utilities
@@ -62,4 +63,37 @@ public class StringUtils {
 		return validValues.toArray(new String[validValues.size()]);
 	}
 
+	/**
+	 * Split value on given separator, trimming parts and dropping empty ones
+	 *
+	 * @param value
+	 * @param separator
+	 * @return non-null but possibly empty array of non-empty strings
+	 */
+	public static String[] split(final String value, final String separator) {
+		if (isEmpty(value))
+			return new String[0];
+		String[] parts = value.split(Pattern.quote(separator));
+		for (int i = 0; i < parts.length; i++)
+			parts[i] = parts[i].trim();
+		return removeEmpties(parts);
+	}
+
+	/**
+	 * Join values with given separator
+	 *
+	 * @param values
+	 * @param separator
+	 * @return non-null but possibly empty string
+	 */
+	public static String join(final String[] values, final String separator) {
+		StringBuilder joined = new StringBuilder();
+		if (values != null)
+			for (String value : values) {
+				if (joined.length() > 0)
+					joined.append(separator);
+				joined.append(value);
+			}
+		return joined.toString();
+	}
 }
@@ -0,0 +1,354 @@
+package github.downloads.uploader.ant;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+
+/**
+ * Tar archive of many files streamed on the fly.
+ * <p>
+ * Tar headers only depend on entry names, sizes and modification times, so
+ * the archive length is known from a stat of each file and the content is
+ * generated while uploading without a temporary file. The first entry is a
+ * generated index listing size, modification time and name of every file.
+ */
+public class TarArchive implements UploadSource {
+
+	private static final int BLOCK = 512;
+
+	private static final String LONG_LINK = "././@LongLink";
+
+	/**
+	 * File in the archive
+	 */
+	public static class Entry {
+
+		private final String name;
+
+		private final File file;
+
+		private final long size;
+
+		private final long modified;
+
+		/**
+		 * Create entry, stating the file
+		 *
+		 * @param name
+		 *            path in archive, using / as separator
+		 * @param file
+		 */
+		public Entry(String name, File file) {
+			this.name = name;
+			this.file = file;
+			this.size = file.length();
+			this.modified = file.lastModified();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+
+	private final List<Entry> entries;
+
+	private final String indexName;
+
+	private final byte[] index;
+
+	private final long created = System.currentTimeMillis();
+
+	private final long length;
+
+	/**
+	 * Create archive
+	 *
+	 * @param entries
+	 * @param indexName
+	 *            name of generated index entry
+	 */
+	public TarArchive(List<Entry> entries, String indexName) {
+		this.entries = entries;
+		this.indexName = indexName;
+		this.index = createIndex(entries);
+
+		long length = getEntryLength(indexName, index.length);
+		for (Entry entry : entries)
+			length += getEntryLength(entry.name, entry.size);
+		this.length = length + 2 * BLOCK;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return number of files in archive, not counting the index
+	 */
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	private static byte[] utf8(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] createIndex(List<Entry> entries) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		StringBuilder index = new StringBuilder();
+		for (Entry entry : entries)
+			index.append(entry.size).append('\t')
+					.append(format.format(new Date(entry.modified)))
+					.append('\t').append(entry.name).append('\n');
+		return utf8(index.toString());
+	}
+
+	private static long padded(long size) {
+		return (size + BLOCK - 1) / BLOCK * BLOCK;
+	}
+
+	private static boolean needsLongLink(byte[] name) {
+		return name.length > 100 && splitPrefix(name) == -1;
+	}
+
+	/**
+	 * Find the / separating a ustar prefix of at most 155 bytes from a name of
+	 * at most 100 bytes
+	 *
+	 * @param name
+	 * @return index of separator or -1 if name can't be split
+	 */
+	private static int splitPrefix(byte[] name) {
+		for (int i = Math.min(155, name.length - 1); i > 0; i--)
+			if (name[i] == '/' && name.length - i - 1 <= 100)
+				return i;
+		return -1;
+	}
+
+	private static long getEntryLength(String name, long size) {
+		byte[] bytes = utf8(name);
+		long length = BLOCK + padded(size);
+		if (needsLongLink(bytes))
+			length += BLOCK + padded(bytes.length + 1);
+		return length;
+	}
+
+	private static void writeOctal(byte[] header, int offset, int length,
+			long value) {
+		String octal = Long.toOctalString(value);
+		if (octal.length() > length - 1) {
+			// Base-256 for values that don't fit, e.g. sizes of 8GB and more
+			header[offset] = (byte) 0x80;
+			for (int i = offset + length - 1; i > offset; i--) {
+				header[i] = (byte) value;
+				value >>>= 8;
+			}
+			return;
+		}
+		int start = offset + length - 1 - octal.length();
+		for (int i = offset; i < start; i++)
+			header[i] = '0';
+		for (int i = 0; i < octal.length(); i++)
+			header[start + i] = (byte) octal.charAt(i);
+		header[offset + length - 1] = 0;
+	}
+
+	private static void writeBytes(byte[] header, int offset, int length,
+			byte[] value) {
+		System.arraycopy(value, 0, header, offset, Math.min(length,
+				value.length));
+	}
+
+	private static byte[] createHeader(byte[] name, long size, long modified,
+			byte type) {
+		byte[] header = new byte[BLOCK];
+		if (name.length <= 100)
+			writeBytes(header, 0, 100, name);
+		else {
+			int split = splitPrefix(name);
+			if (split != -1) {
+				byte[] prefix = new byte[split];
+				System.arraycopy(name, 0, prefix, 0, split);
+				byte[] rest = new byte[name.length - split - 1];
+				System.arraycopy(name, split + 1, rest, 0, rest.length);
+				writeBytes(header, 0, 100, rest);
+				writeBytes(header, 345, 155, prefix);
+			} else
+				writeBytes(header, 0, 100, name);
+		}
+		writeOctal(header, 100, 8, 0644);
+		writeOctal(header, 108, 8, 0);
+		writeOctal(header, 116, 8, 0);
+		writeOctal(header, 124, 12, size);
+		writeOctal(header, 136, 12, modified / 1000);
+		header[156] = type;
+		writeBytes(header, 257, 6, utf8("ustar"));
+		header[263] = '0';
+		header[264] = '0';
+
+		for (int i = 148; i < 156; i++)
+			header[i] = ' ';
+		long checksum = 0;
+		for (byte b : header)
+			checksum += b & 0xff;
+		writeOctal(header, 148, 7, checksum);
+		header[155] = ' ';
+		return header;
+	}
+
+	private static byte[] createHeaders(String name, long size, long modified) {
+		byte[] bytes = utf8(name);
+		byte[] header = createHeader(bytes, size, modified, (byte) '0');
+		if (!needsLongLink(bytes))
+			return header;
+
+		byte[] link = createHeader(utf8(LONG_LINK), bytes.length + 1, 0,
+				(byte) 'L');
+		byte[] headers = new byte[(int) (2 * BLOCK + padded(bytes.length + 1))];
+		System.arraycopy(link, 0, headers, 0, BLOCK);
+		System.arraycopy(bytes, 0, headers, BLOCK, bytes.length);
+		System.arraycopy(header, 0, headers, headers.length - BLOCK, BLOCK);
+		return headers;
+	}
+
+	private static InputStream padding(long size) {
+		return new ByteArrayInputStream(new byte[(int) (padded(size) - size)]);
+	}
+
+	/**
+	 * Stream of exactly the stated number of bytes of a file, opened on first
+	 * read
+	 */
+	private static class EntryInputStream extends FilterInputStream {
+
+		private final Entry entry;
+
+		private long remaining;
+
+		EntryInputStream(Entry entry) {
+			super(null);
+			this.entry = entry;
+			this.remaining = entry.size;
+		}
+
+		private boolean open() throws IOException {
+			if (remaining == 0)
+				return false;
+			if (in == null)
+				in = new BufferedInputStream(new FileInputStream(entry.file));
+			return true;
+		}
+
+		private IOException changed() {
+			return new IOException("File changed while archiving: "
+					+ entry.file);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!open())
+				return -1;
+			int b = super.read();
+			if (b == -1)
+				throw changed();
+			remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (!open())
+				return -1;
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1)
+				throw changed();
+			remaining -= read;
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null)
+				in.close();
+		}
+	}
+
+	public InputStream openStream() {
+		final Iterator<Entry> files = entries.iterator();
+		Enumeration<InputStream> parts = new Enumeration<InputStream>() {
+
+			// Header, content and padding of each entry, then the trailer
+			private int part;
+
+			private Entry current;
+
+			private boolean indexDone;
+
+			private boolean trailerDone;
+
+			public boolean hasMoreElements() {
+				return !trailerDone;
+			}
+
+			public InputStream nextElement() {
+				if (trailerDone)
+					throw new NoSuchElementException();
+				if (!indexDone) {
+					indexDone = part == 2;
+					switch (part++) {
+					case 0:
+						return new ByteArrayInputStream(createHeaders(
+								indexName, index.length, created));
+					case 1:
+						return new ByteArrayInputStream(index);
+					default:
+						part = 0;
+						return padding(index.length);
+					}
+				}
+				if (part == 0 && !files.hasNext()) {
+					trailerDone = true;
+					return new ByteArrayInputStream(new byte[2 * BLOCK]);
+				}
+				switch (part++) {
+				case 0:
+					current = files.next();
+					return new ByteArrayInputStream(createHeaders(current.name,
+							current.size, current.modified));
+				case 1:
+					return new EntryInputStream(current);
+				default:
+					part = 0;
+					return padding(current.size);
+				}
+			}
+		};
+		return new SequenceInputStream(parts);
+	}
+}
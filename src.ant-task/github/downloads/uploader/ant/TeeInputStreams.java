@@ -0,0 +1,258 @@
+package github.downloads.uploader.ant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several streams over the bytes of one source read only once.
+ * <p>
+ * Whichever stream is ahead reads the next chunk from the source; chunks are
+ * dropped once every open stream has passed them. A stream that gets too far
+ * ahead of the slowest one waits for it, bounding memory use. Closing a stream
+ * stops it from holding the others back; the source is closed with the last
+ * stream.
+ * <p>
+ * If a stream waits longer than a given lag, the streams holding it back are
+ * detached and continue on separate streams reopened from the content at
+ * their position, so one stalled reader does not stall all others.
+ */
+public class TeeInputStreams {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final int MAX_CHUNKS = 64;
+
+	private final InputStream source;
+
+	private final UploadSource content;
+
+	private final long maxLag;
+
+	private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+	/**
+	 * Index of the first buffered chunk
+	 */
+	private long first;
+
+	private boolean eof;
+
+	private IOException failure;
+
+	private final Branch[] branches;
+
+	private class Branch extends InputStream {
+
+		private long chunk;
+
+		private int offset;
+
+		private boolean closed;
+
+		private boolean detached;
+
+		/**
+		 * Separate stream of a detached branch, opened on its next read
+		 */
+		private InputStream own;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			synchronized (TeeInputStreams.this) {
+				if (closed)
+					throw new IOException("Stream closed");
+				long start = System.nanoTime();
+				while (!detached && chunk >= first + chunks.size()) {
+					if (failure != null)
+						throw failure;
+					if (eof)
+						return -1;
+					if (chunks.size() >= MAX_CHUNKS && getSlowest() == first) {
+						long remaining = maxLag - (System.nanoTime() - start)
+								/ 1000000;
+						if (maxLag > 0 && remaining <= 0) {
+							detachSlowest();
+							start = System.nanoTime();
+							continue;
+						}
+						try {
+							TeeInputStreams.this.wait(maxLag > 0 ? remaining
+									: 0);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new InterruptedIOException(
+									"Interrupted while waiting for slower streams");
+						}
+					} else
+						readChunk();
+				}
+				if (!detached) {
+					byte[] current = chunks.get((int) (chunk - first));
+					int read = Math.min(len, current.length - offset);
+					System.arraycopy(current, offset, b, off, read);
+					offset += read;
+					if (offset == current.length) {
+						chunk++;
+						offset = 0;
+						trim();
+					}
+					return read;
+				}
+			}
+			return readOwn(b, off, len);
+		}
+
+		/**
+		 * Read from the separate stream, opening it at the position of this
+		 * branch first. Only the thread reading this branch gets here.
+		 */
+		private int readOwn(byte[] b, int off, int len) throws IOException {
+			if (own == null) {
+				own = content.openStream();
+				long position = chunk * CHUNK_SIZE + offset;
+				while (position > 0) {
+					long skipped = own.skip(position);
+					if (skipped <= 0) {
+						if (own.read() == -1)
+							throw new IOException(
+									"Content ended before the detached position");
+						skipped = 1;
+					}
+					position -= skipped;
+				}
+			}
+			return own.read(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			InputStream separate;
+			synchronized (TeeInputStreams.this) {
+				if (closed)
+					return;
+				closed = true;
+				separate = own;
+				trim();
+				if (!detached && isLastAttached())
+					source.close();
+			}
+			if (separate != null)
+				separate.close();
+		}
+	}
+
+	/**
+	 * Create streams
+	 *
+	 * @param source
+	 * @param count
+	 *            number of streams
+	 */
+	public TeeInputStreams(InputStream source, int count) {
+		this(source, count, null, 0);
+	}
+
+	/**
+	 * Create streams detaching streams that fall behind
+	 *
+	 * @param source
+	 *            stream over given content
+	 * @param count
+	 *            number of streams
+	 * @param content
+	 *            content to open separate streams over, null to never detach
+	 * @param maxLag
+	 *            milliseconds a stream waits for slower ones before detaching
+	 *            them, zero or less to never detach
+	 */
+	public TeeInputStreams(InputStream source, int count,
+			UploadSource content, long maxLag) {
+		this.source = source;
+		this.content = content;
+		this.maxLag = content != null ? maxLag : 0;
+		this.branches = new Branch[count];
+		for (int i = 0; i < count; i++)
+			branches[i] = new Branch();
+	}
+
+	/**
+	 * Get stream with given index
+	 *
+	 * @param index
+	 * @return stream
+	 */
+	public InputStream get(int index) {
+		return branches[index];
+	}
+
+	private long getSlowest() {
+		long slowest = Long.MAX_VALUE;
+		for (Branch branch : branches)
+			if (!branch.closed && !branch.detached)
+				slowest = Math.min(slowest, branch.chunk);
+		return slowest;
+	}
+
+	private boolean isLastAttached() {
+		for (Branch branch : branches)
+			if (!branch.closed && !branch.detached)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Detach the streams holding the others back
+	 */
+	private void detachSlowest() {
+		for (Branch branch : branches)
+			if (!branch.closed && !branch.detached && branch.chunk == first)
+				branch.detached = true;
+		trim();
+	}
+
+	private void trim() {
+		long slowest = getSlowest();
+		while (!chunks.isEmpty() && first < slowest) {
+			chunks.remove(0);
+			first++;
+		}
+		notifyAll();
+	}
+
+	private void readChunk() {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int length = 0;
+		try {
+			for (int read; length < chunk.length
+					&& (read = source.read(chunk, length, chunk.length - length)) != -1;)
+				length += read;
+		} catch (IOException e) {
+			failure = e;
+			notifyAll();
+			return;
+		}
+		if (length < chunk.length) {
+			eof = true;
+			if (length == 0) {
+				notifyAll();
+				return;
+			}
+			byte[] last = new byte[length];
+			System.arraycopy(chunk, 0, last, 0, length);
+			chunk = last;
+		}
+		chunks.add(chunk);
+		notifyAll();
+	}
+}
@@ -0,0 +1,50 @@
+package github.downloads.uploader.ant;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream taking tokens from the given buckets for every byte read.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+	/**
+	 * Most bytes read at once, keeps waits short and progress smooth
+	 */
+	private static final int MAX_CHUNK = 16 * 1024;
+
+	private final TokenBucket[] buckets;
+
+	/**
+	 * Create stream
+	 *
+	 * @param in
+	 * @param buckets
+	 */
+	public ThrottledInputStream(InputStream in, TokenBucket... buckets) {
+		super(in);
+		this.buckets = buckets;
+	}
+
+	private void acquire(long count) throws IOException {
+		for (TokenBucket bucket : buckets)
+			bucket.acquire(count);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1)
+			acquire(1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, Math.min(len, MAX_CHUNK));
+		if (read > 0)
+			acquire(read);
+		return read;
+	}
+}
@@ -0,0 +1,108 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Upload throughput observed per host in earlier runs, in bytes per second.
+ * <p>
+ * Each run is blended into the recorded rate with equal weight, so the rate
+ * follows changes in the network within a few runs without swinging on a
+ * single slow one.
+ */
+public class ThroughputHistory {
+
+	private final File file;
+
+	private final Properties rates = new Properties();
+
+	/**
+	 * Load history stored in given file
+	 *
+	 * @param file
+	 */
+	public ThroughputHistory(File file) {
+		this.file = file;
+		if (file.isFile())
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					rates.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// Estimates are only advisory
+				rates.clear();
+			}
+	}
+
+	/**
+	 * Get file recording the history in given state directory
+	 *
+	 * @param dir
+	 * @return history file
+	 */
+	public static File getFile(File dir) {
+		return new File(dir, "throughput.properties");
+	}
+
+	/**
+	 * Get recorded rate of given host
+	 *
+	 * @param host
+	 * @return bytes per second, 0 if nothing was recorded
+	 */
+	public synchronized long getRate(String host) {
+		try {
+			return Long.parseLong(rates.getProperty(host, "0"));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Record bytes uploaded to given host in given time
+	 *
+	 * @param host
+	 * @param bytes
+	 * @param millis
+	 */
+	public synchronized void record(String host, long bytes, long millis) {
+		if (bytes <= 0 || millis <= 0)
+			return;
+		long rate = bytes * 1000 / millis;
+		long previous = getRate(host);
+		if (previous > 0)
+			rate = (rate + previous) / 2;
+		rates.setProperty(host, Long.toString(rate));
+	}
+
+	/**
+	 * Save history
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		File dir = file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create directory " + dir);
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			rates.store(out, "Upload bytes per second by host");
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("Could not write " + file);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package github.downloads.uploader.ant;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Token bucket limiting the rate at which bytes may be sent.
+ * <p>
+ * Tokens refill continuously at the configured rate up to one second worth of
+ * burst. Callers take tokens before sending; when the bucket runs dry the
+ * tokens are reserved ahead and the caller sleeps outside the lock until they
+ * become available, so concurrent callers are served in arrival order. A rate
+ * of zero or less disables limiting.
+ */
+public class TokenBucket {
+
+	private long rate;
+
+	private double tokens;
+
+	private long lastRefill = System.nanoTime();
+
+	/**
+	 * Create bucket
+	 *
+	 * @param rate
+	 *            bytes per second, zero or less for unlimited
+	 */
+	public TokenBucket(long rate) {
+		this.rate = rate;
+		this.tokens = rate;
+	}
+
+	/**
+	 * @return bytes per second, zero or less if unlimited
+	 */
+	public synchronized long getRate() {
+		return rate;
+	}
+
+	/**
+	 * Change rate, keeping tokens already accumulated up to the new burst
+	 *
+	 * @param rate
+	 *            bytes per second, zero or less for unlimited
+	 */
+	public synchronized void setRate(long rate) {
+		refill();
+		this.rate = rate;
+		if (rate > 0 && tokens > rate)
+			tokens = rate;
+	}
+
+	/**
+	 * @return true if this bucket limits anything
+	 */
+	public synchronized boolean isLimited() {
+		return rate > 0;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		if (rate > 0)
+			tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+		lastRefill = now;
+	}
+
+	/**
+	 * Reserve given number of tokens
+	 *
+	 * @param count
+	 * @return nanoseconds to wait before the reserved tokens may be used
+	 */
+	synchronized long reserve(long count) {
+		if (rate <= 0)
+			return 0;
+		refill();
+		tokens -= count;
+		return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+	}
+
+	/**
+	 * Take given number of tokens, waiting for them if necessary
+	 *
+	 * @param count
+	 * @throws InterruptedIOException
+	 *             if interrupted while waiting
+	 */
+	public void acquire(long count) throws InterruptedIOException {
+		long wait = reserve(count);
+		if (wait > 0)
+			try {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for bandwidth");
+			}
+	}
+}
@@ -0,0 +1,100 @@
+package github.downloads.uploader.ant;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Input stream counting the bytes of one transfer so a {@link StallWatchdog}
+ * can abort it when it stops making progress.
+ */
+public class TransferMonitor extends FilterInputStream {
+
+	private final long expected;
+
+	private volatile long transferred;
+
+	private volatile boolean aborted;
+
+	private volatile HttpURLConnection connection;
+
+	/**
+	 * Create monitor
+	 *
+	 * @param in
+	 * @param expected
+	 *            bytes expected to be transferred
+	 */
+	public TransferMonitor(InputStream in, long expected) {
+		super(in);
+		this.expected = expected;
+	}
+
+	/**
+	 * @return bytes expected to be transferred
+	 */
+	public long getExpected() {
+		return expected;
+	}
+
+	/**
+	 * @return bytes read so far
+	 */
+	public long getTransferred() {
+		return transferred;
+	}
+
+	/**
+	 * @return true if aborted
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Set connection the content is sent through, disconnected on abort
+	 *
+	 * @param connection
+	 */
+	void setConnection(HttpURLConnection connection) {
+		this.connection = connection;
+		if (aborted)
+			connection.disconnect();
+	}
+
+	/**
+	 * Abort transfer: fail further reads and disconnect, which also unblocks a
+	 * thread stuck writing to or reading from the connection
+	 */
+	public void abort() {
+		aborted = true;
+		HttpURLConnection connection = this.connection;
+		if (connection != null)
+			connection.disconnect();
+	}
+
+	private void checkAborted() throws IOException {
+		if (aborted)
+			throw new InterruptedIOException("Transfer stalled");
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkAborted();
+		int b = super.read();
+		if (b != -1)
+			transferred++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkAborted();
+		int read = super.read(b, off, len);
+		if (read > 0)
+			transferred += read;
+		return read;
+	}
+}
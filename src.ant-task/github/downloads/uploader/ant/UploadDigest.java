@@ -0,0 +1,99 @@
+package github.downloads.uploader.ant;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * MD5 digest of uploaded content, computed once however many destinations
+ * receive it.
+ * <p>
+ * The digest is either known up front, for content uploaded unchanged whose
+ * digest was already computed for change detection, or computed from the one
+ * stream read for all destinations. It becomes available once that stream has
+ * delivered the full length of the content.
+ */
+public class UploadDigest {
+
+	private final long length;
+
+	private MessageDigest md5;
+
+	private long count;
+
+	private String digest;
+
+	/**
+	 * Create digest of content with given length
+	 *
+	 * @param length
+	 * @param known
+	 *            lower case hex digest of the content, null to compute it from
+	 *            the stream given to {@link #wrap(InputStream)}
+	 */
+	public UploadDigest(long length, String known) {
+		this.length = length;
+		digest = known;
+		if (known == null)
+			md5 = DigestUtils.createMd5();
+	}
+
+	/**
+	 * Wrap the stream over the content, which must be read at most once
+	 *
+	 * @param in
+	 * @return stream updating the digest, or given stream if the digest is
+	 *         known
+	 */
+	public InputStream wrap(InputStream in) {
+		if (md5 == null)
+			return in;
+		return new FilterInputStream(in) {
+
+			@Override
+			public int read() throws IOException {
+				int read = super.read();
+				if (read != -1)
+					update(new byte[] { (byte) read }, 0, 1);
+				else
+					update(null, 0, -1);
+				return read;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				update(b, off, read);
+				return read;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				byte[] buffer = new byte[(int) Math.min(n, 8192)];
+				int read = read(buffer, 0, buffer.length);
+				return read == -1 ? 0 : read;
+			}
+		};
+	}
+
+	private synchronized void update(byte[] b, int off, int read) {
+		if (md5 == null)
+			return;
+		if (read > 0) {
+			md5.update(b, off, read);
+			count += read;
+		}
+		if (count >= length)
+			digest = DigestUtils.toHex(md5.digest());
+		if (read == -1 || count >= length)
+			md5 = null;
+	}
+
+	/**
+	 * @return lower case hex digest, null until the full content was read
+	 */
+	public synchronized String get() {
+		return digest;
+	}
+}
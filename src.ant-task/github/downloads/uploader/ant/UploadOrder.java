@@ -0,0 +1,110 @@
+package github.downloads.uploader.ant;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+/**
+ * Order in which queued files are handed to the upload workers.
+ * <p>
+ * With several upload threads, starting the largest files first keeps one big
+ * file discovered last from extending the run after everything else has
+ * finished. Smallest first gives quick feedback when most files are tiny.
+ */
+public enum UploadOrder {
+
+	/**
+	 * Keep the order files were discovered in
+	 */
+	DISCOVERY,
+
+	/**
+	 * Largest files first
+	 */
+	LARGEST,
+
+	/**
+	 * Smallest files first
+	 */
+	SMALLEST;
+
+	/**
+	 * Parse order from its case insensitive name
+	 *
+	 * @param value
+	 * @return order, {@link #DISCOVERY} if value is empty
+	 */
+	public static UploadOrder fromString(String value) {
+		if (StringUtils.isEmpty(value))
+			return DISCOVERY;
+		for (UploadOrder order : values())
+			if (order.name().equalsIgnoreCase(value.trim()))
+				return order;
+		throw new IllegalArgumentException("Unknown upload order: " + value
+				+ ", expected one of discovery, largest, smallest");
+	}
+
+	/**
+	 * Sort files according to this order. Files matching an earlier priority
+	 * pattern always come before files matching a later one or none at all;
+	 * this order is applied within each priority group.
+	 *
+	 * @param files
+	 * @param priority
+	 *            Ant style patterns matched against file names, may be null
+	 * @return new sorted list
+	 */
+	public List<File> sort(Collection<File> files, final String[] priority) {
+		List<File> sorted = new ArrayList<File>(files);
+		if (this == DISCOVERY && (priority == null || priority.length == 0))
+			return sorted;
+
+		// Stat each file once rather than on every comparison
+		final Map<File, Long> sizes = new HashMap<File, Long>();
+		if (this != DISCOVERY)
+			for (File file : sorted)
+				sizes.put(file, file.length());
+
+		Collections.sort(sorted, new Comparator<File>() {
+
+			public int compare(File a, File b) {
+				int pa = getPriority(a, priority);
+				int pb = getPriority(b, priority);
+				if (pa != pb)
+					return pa < pb ? -1 : 1;
+				if (UploadOrder.this == DISCOVERY)
+					return 0;
+				long la = sizes.get(a);
+				long lb = sizes.get(b);
+				if (la == lb)
+					return 0;
+				return (la < lb) == (UploadOrder.this == SMALLEST) ? -1 : 1;
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Get index of first priority pattern matching file name
+	 *
+	 * @param file
+	 * @param priority
+	 * @return pattern index, or number of patterns if none match
+	 */
+	static int getPriority(File file, String[] priority) {
+		if (priority == null)
+			return 0;
+		String name = file.getName();
+		for (int i = 0; i < priority.length; i++)
+			if (SelectorUtils.match(priority[i], name))
+				return i;
+		return priority.length;
+	}
+}
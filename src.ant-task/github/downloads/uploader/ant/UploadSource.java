@@ -0,0 +1,23 @@
+package github.downloads.uploader.ant;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content of one download whose length is known before the upload starts.
+ */
+public interface UploadSource {
+
+	/**
+	 * @return length in bytes
+	 */
+	long getLength();
+
+	/**
+	 * Open new stream over the content
+	 *
+	 * @return stream of exactly {@link #getLength()} bytes
+	 * @throws IOException
+	 */
+	InputStream openStream() throws IOException;
+}
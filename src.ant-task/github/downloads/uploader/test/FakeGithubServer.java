@@ -0,0 +1,223 @@
+package github.downloads.uploader.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the downloads API and its storage, serving a paged
+ * listing of generated downloads named file-0.bin, file-1.bin and so on, and
+ * accepting creates, deletes and content posts. Created downloads can be
+ * looked up by id and their stored content length read with a HEAD request.
+ */
+public class FakeGithubServer implements HttpHandler {
+
+	private final HttpServer server;
+
+	private final int downloads;
+
+	private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final AtomicInteger nextId;
+
+	private final AtomicInteger truncations = new AtomicInteger();
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private final ConcurrentMap<Integer, Long> declared = new ConcurrentHashMap<Integer, Long>();
+
+	private final ConcurrentMap<Integer, Long> stored = new ConcurrentHashMap<Integer, Long>();
+
+	private static final Pattern SIZE = Pattern.compile("\"size\":(\\d+)");
+
+	private static final Pattern NAME = Pattern.compile("\"name\":\"([^\"]*)\"");
+
+	private static final Pattern ID = Pattern.compile("/(\\d+)$");
+
+	/**
+	 * Start server listing given number of downloads
+	 *
+	 * @param downloads
+	 * @throws IOException
+	 */
+	public FakeGithubServer(int downloads) throws IOException {
+		this.downloads = downloads;
+		nextId = new AtomicInteger(downloads);
+		// Write responses without waiting on the acknowledgement of the
+		// previous segment, which otherwise adds 40 ms to every page
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this);
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+	}
+
+	/**
+	 * @return host to configure the task with
+	 */
+	public String getHost() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @param method
+	 *            request method, or STORE for content posted to storage
+	 * @return number of requests received
+	 */
+	public int getRequests(String method) {
+		AtomicInteger count = requests.get(method);
+		return count != null ? count.get() : 0;
+	}
+
+	/**
+	 * Store the content of the next given number of uploads one byte short
+	 *
+	 * @param truncations
+	 */
+	public void setTruncations(int truncations) {
+		this.truncations.set(truncations);
+	}
+
+	/**
+	 * Fail the next given number of uploads to storage
+	 *
+	 * @param failures
+	 */
+	public void setFailures(int failures) {
+		this.failures.set(failures);
+	}
+
+	/**
+	 * Clear request counts
+	 */
+	public void reset() {
+		requests.clear();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	private void count(String method) {
+		AtomicInteger count = requests.get(method);
+		if (count == null) {
+			requests.putIfAbsent(method, new AtomicInteger());
+			count = requests.get(method);
+		}
+		count.incrementAndGet();
+	}
+
+	private static int getParameter(String query, String name, int defaultValue) {
+		if (query != null)
+			for (String parameter : query.split("&"))
+				if (parameter.startsWith(name + "="))
+					return Integer.parseInt(parameter.substring(name.length() + 1));
+		return defaultValue;
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int read; (read = in.read(buffer)) != -1;)
+			if (!path.startsWith("/storage"))
+				request.write(buffer, 0, read);
+		Matcher number = ID.matcher(path);
+
+		int code = 200;
+		StringBuilder body = new StringBuilder();
+		if (path.startsWith("/storage") && method.equals("HEAD")) {
+			count(method);
+			Long length = number.find() ? stored.get(Integer.valueOf(number
+					.group(1))) : null;
+			if (length != null)
+				exchange.getResponseHeaders().add("Content-Length",
+						length.toString());
+			else
+				code = 404;
+			exchange.sendResponseHeaders(code, -1);
+			exchange.close();
+			return;
+		} else if (path.startsWith("/storage")) {
+			count("STORE");
+			code = 201;
+			if (failures.get() > 0 && failures.getAndDecrement() > 0)
+				code = 500;
+			else if (number.find()) {
+				Integer key = Integer.valueOf(number.group(1));
+				long length = declared.get(key);
+				if (truncations.get() > 0
+						&& truncations.getAndDecrement() > 0)
+					length--;
+				stored.put(key, length);
+			}
+		} else if (method.equals("GET") && number.find()) {
+			count(method);
+			Integer key = Integer.valueOf(number.group(1));
+			body.append("{\"id\":").append(key).append(",\"size\":")
+					.append(declared.get(key)).append(",\"html_url\":\"")
+					.append(getHost()).append("/storage/").append(key)
+					.append("\"}");
+		} else if (method.equals("GET")) {
+			count(method);
+			String query = exchange.getRequestURI().getRawQuery();
+			int page = getParameter(query, "page", 1);
+			int size = getParameter(query, "per_page", 30);
+			int last = Math.max(1, (downloads + size - 1) / size);
+			body.append('[');
+			for (int id = (page - 1) * size; id < Math.min(downloads, page * size); id++) {
+				if (body.length() > 1)
+					body.append(',');
+				body.append("{\"id\":").append(id + 1)
+						.append(",\"name\":\"file-").append(id)
+						.append(".bin\",\"size\":1}");
+			}
+			body.append(']');
+			String url = getHost() + path + "?per_page=" + size + "&page=";
+			if (page < last)
+				exchange.getResponseHeaders().add("Link",
+						"<" + url + (page + 1) + ">; rel=\"next\", <" + url
+								+ last + ">; rel=\"last\"");
+		} else if (method.equals("POST")) {
+			count(method);
+			code = 201;
+			int created = nextId.incrementAndGet();
+			String json = request.toString("UTF-8");
+			Matcher size = SIZE.matcher(json);
+			declared.put(created, size.find() ? Long.parseLong(size.group(1))
+					: 0);
+			Matcher name = NAME.matcher(json);
+			body.append("{\"id\":").append(created).append(",\"name\":\"")
+					.append(name.find() ? name.group(1) : "file")
+					.append("\",\"s3_url\":\"")
+					.append(getHost()).append("/storage/").append(created)
+					.append("\",\"path\":\"p\",\"acl\":\"public-read\",")
+					.append("\"accesskeyid\":\"k\",\"policy\":\"p\",")
+					.append("\"signature\":\"s\",\"mime_type\":\"application/octet-stream\"}");
+		} else if (method.equals("DELETE")) {
+			count(method);
+			code = 204;
+		}
+
+		byte[] response = body.toString().getBytes("UTF-8");
+		exchange.sendResponseHeaders(code, code == 204 ? -1 : response.length);
+		OutputStream out = exchange.getResponseBody();
+		if (code != 204)
+			out.write(response);
+		exchange.close();
+	}
+}
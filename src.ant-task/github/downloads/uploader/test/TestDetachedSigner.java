@@ -0,0 +1,89 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.DetachedSigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class TestDetachedSigner extends TestCase {
+
+	private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+	private static byte[] decode(String text) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int bits = 0, count = 0;
+		for (char c : text.toCharArray()) {
+			int value = BASE64.indexOf(c);
+			if (value < 0)
+				continue;
+			bits = bits << 6 | value;
+			count += 6;
+			if (count >= 8) {
+				count -= 8;
+				out.write(bits >> count);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	public void testSignatureVerifies() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair pair = generator.generateKeyPair();
+		DetachedSigner signer = new DetachedSigner(pair.getPrivate(),
+				0x0123456789abcdefL);
+
+		byte[] data = "signed content".getBytes("UTF-8");
+		DetachedSigner.Signing signing = signer.start();
+		InputStream in = signing.wrap(new ByteArrayInputStream(data));
+		while (in.read(new byte[5]) != -1)
+			;
+		assertEquals(data.length, signing.getLength());
+		String armored = new String(signing.finish(1000000000000L), "US-ASCII");
+		assertTrue(armored.startsWith("-----BEGIN PGP SIGNATURE-----\n\n"));
+		assertTrue(armored.endsWith("\n-----END PGP SIGNATURE-----\n"));
+
+		String body = armored.substring(31, armored.lastIndexOf("\n=") + 1);
+		byte[] packet = decode(body);
+		// New format signature packet with two octet length
+		assertEquals(0xc2, packet[0] & 0xff);
+		int length = ((packet[1] & 0xff) - 192 << 8) + (packet[2] & 0xff) + 192;
+		assertEquals(packet.length - 3, length);
+		byte[] header = Arrays.copyOfRange(packet, 3, 3 + 12);
+		assertEquals(4, header[0]);
+		assertEquals(0, header[1]);
+
+		MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+		sha256.update(data);
+		sha256.update(header);
+		sha256.update(new byte[] { 4, (byte) 0xff, 0, 0, 0, 12 });
+		byte[] hash = sha256.digest();
+		// Issuer subpacket follows, then the left 16 bits of the hash
+		int offset = 3 + 12 + 2 + 10;
+		assertEquals(hash[0], packet[offset]);
+		assertEquals(hash[1], packet[offset + 1]);
+
+		int bits = (packet[offset + 2] & 0xff) << 8 | packet[offset + 3] & 0xff;
+		byte[] value = new BigInteger(1, Arrays.copyOfRange(packet,
+				offset + 4, offset + 4 + (bits + 7) / 8)).toByteArray();
+		Signature rsa = Signature.getInstance("SHA256withRSA");
+		rsa.initVerify(pair.getPublic());
+		rsa.update(data);
+		rsa.update(header);
+		rsa.update(new byte[] { 4, (byte) 0xff, 0, 0, 0, 12 });
+		byte[] signature = new byte[256];
+		int start = Math.max(0, value.length - 256);
+		System.arraycopy(value, start, signature, 256 - (value.length - start),
+				value.length - start);
+		assertTrue(rsa.verify(signature));
+	}
+}
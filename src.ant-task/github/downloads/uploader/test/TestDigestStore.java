@@ -0,0 +1,91 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.DigestStore;
+import github.downloads.uploader.ant.DigestUtils;
+import github.downloads.uploader.ant.GithubDownloadUploaderTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+
+public class TestDigestStore extends TestCase {
+
+	public void testMd5() throws IOException {
+		assertEquals("900150983cd24fb0d6963f7d28e17f72",
+				DigestUtils.md5(new ByteArrayInputStream("abc".getBytes())));
+	}
+
+	public void testUnchanged() throws IOException {
+		File dir = File.createTempFile("digests", "");
+		dir.delete();
+		File file = DigestStore.getFile(dir, "api.github.com/owner/repo");
+		try {
+			DigestStore store = new DigestStore(file);
+			assertFalse(store.isUnchanged("a.zip", 1, 3, "d"));
+			store.record("a.zip", 1, 3, "d");
+			store.save();
+
+			store = new DigestStore(file);
+			assertTrue(store.isUnchanged("a.zip", 1, 3, "d"));
+			assertFalse(store.isUnchanged("a.zip", null, 3, "d"));
+			assertFalse(store.isUnchanged("a.zip", 2, 3, "d"));
+			assertFalse(store.isUnchanged("a.zip", 1, 4, "d"));
+			assertFalse(store.isUnchanged("a.zip", 1, 3, "e"));
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	public void testKnownSizesAndDigests() throws IOException {
+		File dir = File.createTempFile("digests", "");
+		dir.delete();
+		FakeGithubServer server = new FakeGithubServer(1);
+		File file = DigestStore.getFile(dir, server.getHost() + "/owner/repo");
+		final String[] plan = new String[1];
+		try {
+			DigestStore store = new DigestStore(file);
+			store.record("file-0.bin", 1, 5, "d");
+			store.save();
+
+			GithubDownloadUploaderTask task = new GithubDownloadUploaderTask() {
+
+				@Override
+				public void info(String message) {
+					if (message.startsWith("Plan: "))
+						plan[0] = message;
+				}
+			};
+			task.setProject(new Project());
+			task.setHost(server.getHost());
+			task.setOwner("owner");
+			task.setRepository("repo");
+			task.setUsername("user");
+			task.setPassword("password");
+			task.setStateDir(dir);
+			task.setSkipUnchanged(true);
+			task.setOverwrite(true);
+			task.setDryRun(true);
+			// Listed where the files are, so the task never reads them
+			File listed = new File(dir, "file-0.bin");
+			task.setFiles(new File[] { listed });
+			task.setSizes(Collections.singletonMap(listed, 5L));
+			task.setDigests(Collections.singletonMap(listed, "d"));
+			task.execute();
+
+			assertTrue(plan[0], plan[0].startsWith("Plan: 0 to add, 0 to replace, 1 unchanged"));
+		} finally {
+			server.stop();
+			File[] children = dir.listFiles();
+			if (children != null)
+				for (File child : children)
+					child.delete();
+			dir.delete();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.DownloadIndex;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class TestDownloadIndex extends TestCase {
+
+	public void testLookup() {
+		DownloadIndex index = new DownloadIndex();
+		index.add("app.zip", 1);
+		index.add("app-1.0.zip", 2);
+		index.add("\u00dcn\u00efcode.txt", 3);
+		assertEquals(3, index.size());
+		assertEquals(Integer.valueOf(1), index.get("app.zip"));
+		assertEquals(Integer.valueOf(3), index.get("\u00dcn\u00efcode.txt"));
+		assertNull(index.get("app-2.0.zip"));
+		assertFalse(index.containsKey(Integer.valueOf(1)));
+
+		assertEquals(Integer.valueOf(2), index.remove("app-1.0.zip"));
+		assertNull(index.remove("app-1.0.zip"));
+		assertNull(index.get("app-1.0.zip"));
+		assertEquals(2, index.size());
+	}
+
+	public void testSameHash() {
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		DownloadIndex index = new DownloadIndex();
+		index.add("Aa", 1);
+		index.add("BB", 2);
+		assertEquals(Integer.valueOf(1), index.get("Aa"));
+		assertEquals(Integer.valueOf(2), index.get("BB"));
+		assertEquals(Integer.valueOf(1), index.remove("Aa"));
+		assertEquals(Integer.valueOf(2), index.get("BB"));
+	}
+
+	public void testLaterDownloadOfSameNameWins() {
+		DownloadIndex index = new DownloadIndex();
+		index.add("app.zip", 1);
+		index.add("other.zip", 2);
+		index.add("app.zip", 3);
+		assertEquals(2, index.size());
+		assertEquals(Integer.valueOf(3), index.remove("app.zip"));
+		assertNull(index.get("app.zip"));
+	}
+
+	public void testEqualsHashMap() {
+		DownloadIndex index = new DownloadIndex();
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		for (int i = 0; i < 1000; i++) {
+			index.add("file-" + i % 700 + ".bin", i + 1);
+			expected.put("file-" + i % 700 + ".bin", i + 1);
+		}
+		index.remove("file-5.bin");
+		expected.remove("file-5.bin");
+		assertEquals(expected, index);
+		assertEquals(expected, new HashMap<String, Integer>(index));
+	}
+}
@@ -0,0 +1,109 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.FileSetWalker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+
+public class TestFileSetWalker extends TestCase {
+
+	private File dir;
+
+	private Project project;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("walker", "");
+		dir.delete();
+		for (String path : new String[] { "a.zip", "a.txt", "dist/b.zip",
+				"dist/nested/c.zip", "dist/nested/c.txt", "build/d.zip",
+				".svn/entries", "dist/.svn/e.zip" }) {
+			File file = new File(dir, path);
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+		}
+		project = new Project();
+	}
+
+	@Override
+	protected void tearDown() {
+		delete(dir);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+	private FileSet createFileSet(String includes, String excludes) {
+		FileSet files = new FileSet();
+		files.setProject(project);
+		files.setDir(dir);
+		files.setIncludes(includes);
+		files.setExcludes(excludes);
+		return files;
+	}
+
+	private Set<File> walk(FileSet files) {
+		Set<File> walked = new HashSet<File>();
+		for (Iterator<File> it = FileSetWalker.iterate(files, project); it
+				.hasNext();)
+			assertTrue(walked.add(it.next()));
+		return walked;
+	}
+
+	private Set<File> scan(FileSet files) {
+		Set<File> scanned = new HashSet<File>();
+		for (String name : files.getDirectoryScanner(project)
+				.getIncludedFiles())
+			scanned.add(new File(dir, name));
+		return scanned;
+	}
+
+	public void testMatchesDirectoryScanner() {
+		String[][] patterns = { { null, null }, { "**/*.zip", null },
+				{ "dist/", "**/nested/**" }, { "*.zip,build/**", "a*" },
+				{ "**/*.zip", "dist/**/c.*" } };
+		for (String[] pattern : patterns) {
+			FileSet files = createFileSet(pattern[0], pattern[1]);
+			assertEquals(Arrays.toString(pattern), scan(files), walk(files));
+		}
+	}
+
+	public void testDefaultExcludes() {
+		FileSet files = createFileSet("**/*.zip", null);
+		assertFalse(walk(files).contains(new File(dir, "dist/.svn/e.zip")));
+		files.setDefaultexcludes(false);
+		assertTrue(walk(files).contains(new File(dir, "dist/.svn/e.zip")));
+	}
+
+	public void testMissingDirectory() {
+		FileSet files = createFileSet(null, null);
+		files.setDir(new File(dir, "missing"));
+		files.setErrorOnMissingDir(false);
+		assertEquals(Collections.<File> emptySet(), walk(files));
+	}
+
+	public void testMultipleFileSets() {
+		Set<File> walked = new HashSet<File>();
+		for (File file : FileSetWalker.iterate(Arrays.asList(
+				createFileSet("a.*", null), createFileSet("build/**", null)),
+				project))
+			walked.add(file);
+		assertEquals(new HashSet<File>(Arrays.asList(new File(dir, "a.zip"),
+				new File(dir, "a.txt"), new File(dir, "build/d.zip"))), walked);
+	}
+}
@@ -0,0 +1,45 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.GithubDownloadUploaderMain;
+import github.downloads.uploader.ant.GithubDownloadUploaderTask;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestGithubDownloadUploaderMain extends TestCase {
+
+	public void testConfigure() {
+		GithubDownloadUploaderTask task = new GithubDownloadUploaderTask();
+		List<File> files = GithubDownloadUploaderMain.configure(task,
+				new String[] { "--owner=o", "--repository=r", "--overwrite",
+						"--dryRun=false", "--threads=4", "a.zip", "--",
+						"--b.zip" });
+		assertEquals(Arrays.asList(new File("a.zip"), new File("--b.zip")),
+				files);
+		assertTrue(task.isOverwrite());
+		assertFalse(task.isDryRun());
+	}
+
+	public void testAttributeNamesIgnoreCase() {
+		GithubDownloadUploaderTask task = new GithubDownloadUploaderTask();
+		GithubDownloadUploaderMain.configure(task,
+				new String[] { "--skipunchanged" });
+		assertTrue(task.isSkipUnchanged());
+	}
+
+	public void testInvalidOptions() {
+		GithubDownloadUploaderTask task = new GithubDownloadUploaderTask();
+		for (String option : new String[] { "--nosuch=1", "--threads=many",
+				"--owner", "--files=a.zip" })
+			try {
+				GithubDownloadUploaderMain.configure(task,
+						new String[] { option });
+				fail(option);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+	}
+}
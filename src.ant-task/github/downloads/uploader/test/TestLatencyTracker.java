@@ -0,0 +1,73 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.LatencyTracker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class TestLatencyTracker extends TestCase {
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("latency", "");
+		dir.delete();
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] children = dir.listFiles();
+		if (children != null)
+			for (File child : children)
+				child.delete();
+		dir.delete();
+	}
+
+	public void testSeededFromEarlierRuns() throws IOException {
+		dir.mkdirs();
+		File file = LatencyTracker.getFile(dir);
+		Properties saved = new Properties();
+		saved.setProperty("seeded owner/a", "10,20,30,40,500");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			saved.store(out, null);
+		} finally {
+			out.close();
+		}
+
+		assertEquals(500, LatencyTracker.get("seeded owner/a", file)
+				.getPercentile(95));
+		// Other repositories keep their own durations
+		assertEquals(-1, LatencyTracker.get("seeded owner/b", file)
+				.getPercentile(95));
+	}
+
+	public void testSaveKeepsOtherKeys() throws IOException {
+		File file = LatencyTracker.getFile(dir);
+		LatencyTracker first = LatencyTracker.get("saved owner/a", file);
+		first.record(10);
+		first.record(20);
+		first.save("saved owner/a", file);
+		LatencyTracker second = LatencyTracker.get("saved owner/b", file);
+		second.record(30);
+		second.save("saved owner/b", file);
+
+		Properties saved = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			saved.load(in);
+		} finally {
+			in.close();
+		}
+		assertEquals("10,20", saved.getProperty("saved owner/a"));
+		assertEquals("30", saved.getProperty("saved owner/b"));
+	}
+}
@@ -0,0 +1,211 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.DownloadIndex;
+import github.downloads.uploader.ant.GithubDownloadUploaderTask;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.eclipse.egit.github.core.RepositoryId;
+import org.eclipse.egit.github.core.service.DownloadService;
+
+public class TestLowMemory extends TestCase {
+
+	private static final int FILES = 100000;
+
+	/**
+	 * Heap of the forked dry run: twice what low memory mode needs, while
+	 * holding the listing and the files as usual runs out below 48 MB
+	 */
+	private static final String HEAP = "-Xmx16m";
+
+	private static File dir;
+
+	private static File state;
+
+	private static FakeGithubServer server;
+
+	private DownloadIndex index;
+
+	private String plan;
+
+	/**
+	 * Create the files and start the server once for all tests
+	 *
+	 * @return suite
+	 */
+	public static Test suite() {
+		return new TestSetup(new TestSuite(TestLowMemory.class)) {
+
+			@Override
+			protected void setUp() throws IOException {
+				dir = File.createTempFile("lowmemory", "");
+				dir.delete();
+				for (int i = 0; i < FILES; i++) {
+					File sub = new File(dir, "d" + i / 1000);
+					if (i % 1000 == 0)
+						sub.mkdirs();
+					FileOutputStream out = new FileOutputStream(new File(sub,
+							"file-" + i + ".bin"));
+					out.write(i);
+					out.close();
+				}
+				state = File.createTempFile("lowmemory-state", "");
+				state.delete();
+				server = new FakeGithubServer(FILES);
+			}
+
+			@Override
+			protected void tearDown() {
+				server.stop();
+				delete(dir);
+				delete(state);
+			}
+		};
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+	@Override
+	protected void setUp() {
+		server.reset();
+	}
+
+	private static GithubDownloadUploaderTask configure(
+			GithubDownloadUploaderTask task, String host, File dir,
+			File state, String includes) {
+		Project project = new Project();
+		task.setProject(project);
+		FileSet files = new FileSet();
+		files.setProject(project);
+		files.setDir(dir);
+		files.setIncludes(includes);
+		task.addFileSet(files);
+		task.setHost(host);
+		task.setOwner("owner");
+		task.setRepository("repo");
+		task.setUsername("user");
+		task.setPassword("password");
+		task.setStateDir(state);
+		task.setOverwrite(true);
+		task.setLowMemory(true);
+		task.setThreads(4);
+		return task;
+	}
+
+	private GithubDownloadUploaderTask createTask(String includes) {
+		return configure(new GithubDownloadUploaderTask() {
+
+			@Override
+			protected DownloadIndex indexDownloads(DownloadService service,
+					RepositoryId repository) {
+				return index = super.indexDownloads(service, repository);
+			}
+
+			@Override
+			public void info(String message) {
+				if (message.startsWith("Plan: "))
+					plan = message;
+			}
+		}, server.getHost(), dir, state, includes);
+	}
+
+	/**
+	 * Dry run of all files in the forked JVM with the bounded heap
+	 *
+	 * @param args
+	 *            host, directory of the files and state directory
+	 */
+	public static void main(String[] args) {
+		GithubDownloadUploaderTask task = configure(
+				new GithubDownloadUploaderTask() {
+
+					@Override
+					public void info(String message) {
+						if (message.startsWith("Plan: "))
+							System.out.println(message);
+					}
+				}, args[0], new File(args[1]), new File(args[2]), "**/*.bin");
+		task.setDryRun(true);
+		task.execute();
+	}
+
+	public void testDryRunInBoundedHeap() throws Exception {
+		File java = new File(new File(System.getProperty("java.home"), "bin"),
+				"java");
+		Process process = new ProcessBuilder(java.getPath(), HEAP, "-cp",
+				System.getProperty("java.class.path"),
+				TestLowMemory.class.getName(), server.getHost(),
+				dir.getPath(), state.getPath()).redirectErrorStream(true)
+				.start();
+		process.getOutputStream().close();
+		StringBuilder output = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				process.getInputStream()));
+		try {
+			for (String line; (line = reader.readLine()) != null;)
+				output.append(line).append('\n');
+		} finally {
+			reader.close();
+		}
+
+		assertEquals(output.toString(), 0, process.waitFor());
+		assertTrue(output.toString(), output.toString().startsWith(
+				"Plan: 0 to add, " + FILES + " to replace, 0 unchanged"));
+		assertEquals(FILES / 100, server.getRequests("GET"));
+	}
+
+	public void testDryRunReplacingAll() {
+		GithubDownloadUploaderTask task = createTask("**/*.bin");
+		task.setDryRun(true);
+		task.execute();
+
+		assertEquals(FILES / 100, server.getRequests("GET"));
+		assertEquals(0, server.getRequests("DELETE"));
+		assertEquals(0, server.getRequests("POST"));
+		assertTrue(plan, plan.startsWith("Plan: 0 to add, " + FILES
+				+ " to replace, 0 unchanged"));
+		// Every download was taken out of the index by the file replacing it
+		assertEquals(0, index.size());
+		// Arrays of the index: 16 bytes and a name of at most 14 characters
+		// per download, and up to half again while growing
+		assertTrue(index.getMemoryUsage() < FILES * (16 + 14) * 3 / 2);
+	}
+
+	public void testUpload() {
+		GithubDownloadUploaderTask task = createTask("d0/file-1?.bin");
+		task.execute();
+
+		assertEquals(10, server.getRequests("DELETE"));
+		assertEquals(10, server.getRequests("POST"));
+		assertEquals(10, server.getRequests("STORE"));
+		assertEquals(FILES - 10, index.size());
+	}
+
+	public void testEmptyPriority() {
+		GithubDownloadUploaderTask task = createTask("d0/file-1?.bin");
+		// As set by an Ant property expanding to nothing
+		task.setPriority("");
+		assertNull(task.getPriority());
+		task.setDryRun(true);
+		task.execute();
+
+		assertTrue(plan, plan.startsWith("Plan: 0 to add, 10 to replace"));
+	}
+}
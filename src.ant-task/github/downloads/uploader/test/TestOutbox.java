@@ -0,0 +1,198 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.Destination;
+import github.downloads.uploader.ant.GithubDownloadUploaderTask;
+import github.downloads.uploader.ant.Outbox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+
+public class TestOutbox extends TestCase {
+
+	public void testWriteReadClear() throws IOException {
+		File dir = File.createTempFile("outbox", "");
+		dir.delete();
+		File outbox = Outbox.getFile(dir, "api.github.com/owner/repo");
+		try {
+			assertTrue(Outbox.read(outbox).isEmpty());
+			assertTrue(Outbox.readSettings(outbox).isEmpty());
+
+			List<File> files = Arrays.asList(new File("/b.zip").getAbsoluteFile(),
+					new File("/a.zip").getAbsoluteFile());
+			Outbox.write(outbox, files,
+					Collections.singletonMap("description", "Nightly"));
+			assertEquals(files, Outbox.read(outbox));
+			assertEquals(Collections.singletonMap("description", "Nightly"),
+					Outbox.readSettings(outbox));
+
+			Outbox.write(outbox, Collections.<File> emptyList(),
+					Collections.<String, String> emptyMap());
+			assertFalse(outbox.exists());
+		} finally {
+			outbox.delete();
+			dir.delete();
+		}
+	}
+
+	public void testReplayUsesFreshTask() throws Exception {
+		File dir = File.createTempFile("outbox", "");
+		dir.delete();
+		dir.mkdirs();
+		File file = new File(dir, "app.zip");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[100]);
+		out.close();
+		FakeGithubServer server = new FakeGithubServer(0);
+		final List<GithubDownloadUploaderTask> replays = Collections
+				.synchronizedList(new ArrayList<GithubDownloadUploaderTask>());
+		try {
+			GithubDownloadUploaderTask task = new GithubDownloadUploaderTask() {
+
+				@Override
+				protected GithubDownloadUploaderTask createReplay(
+						Destination destination, Map<String, String> settings) {
+					GithubDownloadUploaderTask replay = super.createReplay(
+							destination, settings);
+					replays.add(replay);
+					return replay;
+				}
+
+				@Override
+				public void info(String message) {
+				}
+			};
+			task.setProject(new Project());
+			task.setHost(server.getHost());
+			task.setOwner("owner");
+			task.setRepository("repo");
+			task.setUsername("user");
+			task.setPassword("password");
+			task.setDescription("Nightly");
+			task.setStateDir(dir);
+			task.setRetries(0);
+			task.setOutbox(true);
+			task.setReplayAttempts(1);
+			task.setReplayDelay(0);
+			task.setFiles(new File[] { file });
+			server.setFailures(1);
+			try {
+				task.execute();
+				fail("Upload should have failed");
+			} catch (RuntimeException expected) {
+				// Kept in the outbox and replayed
+			}
+			File outbox = null;
+			for (File child : dir.listFiles())
+				if (child.getName().endsWith(".outbox"))
+					outbox = child;
+			assertNotNull(outbox);
+			for (int i = 0; i < 100 && outbox.exists(); i++)
+				Thread.sleep(100);
+
+			assertFalse(outbox.exists());
+			assertEquals(2, server.getRequests("STORE"));
+			assertEquals(1, replays.size());
+			assertEquals("Nightly", replays.get(0).getDescription());
+		} finally {
+			server.stop();
+			for (File child : dir.listFiles())
+				child.delete();
+			dir.delete();
+		}
+	}
+
+	private static Destination createDestination(FakeGithubServer server,
+			String repository) {
+		Destination destination = new Destination();
+		destination.setHost(server.getHost());
+		destination.setOwner("owner");
+		destination.setRepository(repository);
+		destination.setUsername("user");
+		destination.setPassword("password");
+		return destination;
+	}
+
+	public void testRunTakesOverOwnDestinationOnly() throws Exception {
+		File dir = File.createTempFile("outbox", "");
+		dir.delete();
+		dir.mkdirs();
+		File file = new File(dir, "app.zip");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[100]);
+		out.close();
+		FakeGithubServer server = new FakeGithubServer(0);
+		final List<String> replayed = Collections
+				.synchronizedList(new ArrayList<String>());
+		try {
+			GithubDownloadUploaderTask task = new GithubDownloadUploaderTask() {
+
+				@Override
+				protected GithubDownloadUploaderTask createReplay(
+						Destination destination, Map<String, String> settings) {
+					replayed.add(destination.getKey());
+					return super.createReplay(destination, settings);
+				}
+
+				@Override
+				public void info(String message) {
+				}
+			};
+			task.setProject(new Project());
+			task.addDestination(createDestination(server, "a"));
+			task.addDestination(createDestination(server, "b"));
+			task.setStateDir(dir);
+			task.setRetries(0);
+			task.setOutbox(true);
+			task.setReplayAttempts(1);
+			task.setReplayDelay(2);
+			task.setFiles(new File[] { file });
+			server.setFailures(2);
+			try {
+				task.execute();
+				fail("Upload should have failed");
+			} catch (RuntimeException expected) {
+				// Kept in the outboxes of both destinations
+			}
+
+			GithubDownloadUploaderTask single = new GithubDownloadUploaderTask() {
+
+				@Override
+				public void info(String message) {
+				}
+			};
+			single.setProject(new Project());
+			single.addDestination(createDestination(server, "a"));
+			single.setStateDir(dir);
+			single.setOutbox(true);
+			single.setFiles(new File[] { file });
+			single.execute();
+
+			File outbox = Outbox.getFile(dir, server.getHost() + "/owner/b");
+			assertTrue(outbox.exists());
+			for (int i = 0; i < 100 && outbox.exists(); i++)
+				Thread.sleep(100);
+
+			assertFalse(outbox.exists());
+			// Only the destination the second run left alone was replayed
+			assertEquals(
+					Collections.singletonList(server.getHost() + "/owner/b"),
+					replayed);
+			assertEquals(4, server.getRequests("STORE"));
+		} finally {
+			server.stop();
+			for (File child : dir.listFiles())
+				child.delete();
+			dir.delete();
+		}
+	}
+}
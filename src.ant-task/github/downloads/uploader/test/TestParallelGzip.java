@@ -0,0 +1,90 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.ParallelGzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+public class TestParallelGzip extends TestCase {
+
+	private byte[] roundTrip(byte[] content, int level) throws IOException {
+		return roundTrip(content, level, ParallelGzip.MEMORY_LIMIT, false);
+	}
+
+	private byte[] roundTrip(byte[] content, int level, long memoryLimit,
+			boolean spilled) throws IOException {
+		File file = File.createTempFile("gzip", ".log");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ParallelGzip.Compressed compressed = new ParallelGzip(executor,
+					level, 4, memoryLimit).compress(file);
+			assertEquals(spilled, compressed.isSpilled());
+			ByteArrayOutputStream raw = new ByteArrayOutputStream();
+			InputStream in = compressed.openStream();
+			byte[] buffer = new byte[8192];
+			for (int read; (read = in.read(buffer)) != -1;)
+				raw.write(buffer, 0, read);
+			in.close();
+			assertEquals(compressed.getLength(), raw.size());
+			compressed.release();
+
+			ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+			in = new GZIPInputStream(new ByteArrayInputStream(
+					raw.toByteArray()));
+			for (int read; (read = in.read(buffer)) != -1;)
+				decoded.write(buffer, 0, read);
+			return decoded.toByteArray();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testMultipleBlocks() throws IOException {
+		byte[] content = new byte[ParallelGzip.BLOCK_SIZE * 3 + 12345];
+		Random random = new Random(1);
+		for (int i = 0; i < content.length; i++)
+			content[i] = (byte) ('a' + random.nextInt(4));
+		assertTrue(Arrays.equals(content,
+				roundTrip(content, Deflater.DEFAULT_COMPRESSION)));
+		assertTrue(Arrays.equals(content,
+				roundTrip(content, Deflater.BEST_SPEED)));
+	}
+
+	public void testIncompressible() throws IOException {
+		byte[] content = new byte[100000];
+		new Random(2).nextBytes(content);
+		assertTrue(Arrays.equals(content,
+				roundTrip(content, Deflater.BEST_COMPRESSION)));
+	}
+
+	public void testSpilledToFile() throws IOException {
+		byte[] content = new byte[ParallelGzip.BLOCK_SIZE * 2];
+		new Random(3).nextBytes(content);
+		assertTrue(Arrays.equals(content,
+				roundTrip(content, Deflater.BEST_SPEED, 1000, true)));
+	}
+
+	public void testEmpty() throws IOException {
+		assertEquals(0, roundTrip(new byte[0], Deflater.BEST_SPEED).length);
+	}
+}
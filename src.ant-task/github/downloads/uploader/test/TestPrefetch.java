@@ -0,0 +1,79 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.GithubDownloadUploaderTask;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+
+public class TestPrefetch extends TestCase {
+
+	private File dir;
+
+	private FakeGithubServer server;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("prefetch", "");
+		dir.delete();
+		dir.mkdirs();
+		server = new FakeGithubServer(250);
+	}
+
+	@Override
+	protected void tearDown() {
+		server.stop();
+		File[] children = dir.listFiles();
+		if (children != null)
+			for (File child : children)
+				child.delete();
+		dir.delete();
+	}
+
+	private GithubDownloadUploaderTask createTask(String scope, File file) {
+		GithubDownloadUploaderTask task = new GithubDownloadUploaderTask() {
+
+			@Override
+			public void info(String message) {
+			}
+		};
+		task.setProject(new Project());
+		task.setHost(server.getHost());
+		task.setOwner("owner");
+		task.setRepository("repo");
+		task.setUsername("user");
+		task.setPassword("password");
+		task.setStateDir(dir);
+		task.setOverwrite(true);
+		task.setDryRun(true);
+		task.setPrefetchScope(scope);
+		if (file != null)
+			task.setFiles(new File[] { file });
+		return task;
+	}
+
+	/**
+	 * A matrix of two configurations aggregating its upload prefetches once
+	 * for the matrix build, whose upload uses that listing
+	 */
+	public void testMatrixListsOnce() throws IOException {
+		File file = new File(dir, "app.zip");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(1);
+		out.close();
+
+		createTask("matrix#1", null).prefetch();
+		// Both configurations leave upload and listing to the matrix build
+		createTask("matrix#1", file).execute();
+		int pages = server.getRequests("GET");
+		assertTrue(pages > 0);
+
+		// Nobody prefetched for a configuration, so its upload would list again
+		createTask("matrix/axis=a#1", file).execute();
+		assertEquals(2 * pages, server.getRequests("GET"));
+	}
+}
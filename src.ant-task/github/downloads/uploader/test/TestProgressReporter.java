@@ -0,0 +1,45 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.ProgressReporter;
+import github.downloads.uploader.ant.TransferMonitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestProgressReporter extends TestCase {
+
+	public void testReport() throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		ProgressReporter reporter = new ProgressReporter(60000) {
+
+			protected void print(String line) {
+				lines.add(line);
+			}
+		};
+		reporter.addTotal(4000);
+		TransferMonitor first = new TransferMonitor(new ByteArrayInputStream(
+				new byte[2000]), 2000);
+		TransferMonitor second = new TransferMonitor(new ByteArrayInputStream(
+				new byte[2000]), 2000);
+		ProgressReporter.Transfer transfer = reporter.register("a.zip", first);
+		ProgressReporter.Transfer other = reporter.register("b.zip", second);
+		first.read(new byte[2000]);
+		second.read(new byte[500]);
+		reporter.finish(transfer, true);
+
+		reporter.report();
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0), lines.get(0).startsWith("b.zip: 25% of 2.0 KB, "));
+		assertTrue(lines.get(1), lines.get(1).startsWith("Total: 62% of 3.9 KB, "));
+
+		// Nothing to report once all transfers are done
+		lines.clear();
+		reporter.finish(other, true);
+		reporter.report();
+		assertTrue(lines.isEmpty());
+	}
+}
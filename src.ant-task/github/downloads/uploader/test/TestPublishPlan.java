@@ -0,0 +1,55 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.PublishPlan;
+import github.downloads.uploader.ant.ThroughputHistory;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class TestPublishPlan extends TestCase {
+
+	public void testEstimate() {
+		ThroughputHistory history = new ThroughputHistory(new File(
+				"does-not-exist.properties"));
+		history.record("a", 1000000, 1000);
+		history.record("a", 3000000, 1000);
+		history.record("b", 500000, 1000);
+		assertEquals(2000000, history.getRate("a"));
+
+		PublishPlan plan = new PublishPlan();
+		plan.addRequests(1);
+		plan.addUpload("a", 4000000, false, false);
+		plan.addUpload("b", 1000000, true, true);
+		plan.addSkip();
+		assertEquals(5000000, plan.getBytes());
+		// Both hosts take two seconds
+		assertEquals(2000, plan.getEstimatedMillis(history));
+		assertTrue(plan.toString(), plan.toString().startsWith(
+				"1 to add, 1 to replace, 1 unchanged; "));
+		assertTrue(plan.toString(), plan.toString().endsWith(" 8 requests"));
+
+		plan.addUpload("c", 1, false, false);
+		assertEquals(-1, plan.getEstimatedMillis(history));
+
+		plan.setUncompressed();
+		assertTrue(plan.toString(), plan.toString().contains(
+				" before compression to transfer"));
+	}
+
+	public void testOverlappingTransfersCountedOnce() throws Exception {
+		PublishPlan plan = new PublishPlan();
+		plan.startTransfer("a");
+		plan.startTransfer("a");
+		Thread.sleep(100);
+		plan.endTransfer("a", 10);
+		Thread.sleep(100);
+		plan.endTransfer("a", 20);
+		Thread.sleep(100);
+
+		assertEquals(30, plan.getTransferredBytes("a"));
+		long millis = plan.getTransferMillis("a");
+		assertTrue("Took " + millis + "ms", millis >= 190 && millis < 290);
+		assertEquals(0, plan.getTransferMillis("b"));
+	}
+}
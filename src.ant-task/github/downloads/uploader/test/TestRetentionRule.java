@@ -0,0 +1,59 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.DatedDownload;
+import github.downloads.uploader.ant.RetentionRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.egit.github.core.Download;
+
+public class TestRetentionRule extends TestCase {
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private static final long NOW = 1000 * DAY;
+
+	private static Download download(int id, String name, int age) {
+		DatedDownload download = new DatedDownload();
+		download.setId(id);
+		download.setName(name);
+		return download.setCreatedAt(new Date(NOW - age * DAY));
+	}
+
+	private static RetentionRule rule(String pattern, int keep, int maxAge) {
+		RetentionRule rule = new RetentionRule();
+		rule.setPattern(pattern);
+		rule.setKeep(keep);
+		rule.setMaxAge(maxAge);
+		return rule;
+	}
+
+	private static List<Integer> ids(List<Download> downloads) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (Download download : downloads)
+			ids.add(download.getId());
+		return ids;
+	}
+
+	public void testKeepLast() {
+		List<Download> downloads = Arrays.asList(download(1, "nightly-1.zip", 3),
+				download(3, "nightly-3.zip", 1), download(2, "nightly-2.zip", 2),
+				download(4, "release-1.zip", 9));
+		List<Download> delete = RetentionRule.select(downloads,
+				Arrays.asList(rule("nightly-*", 2, 0)), NOW);
+		assertEquals(Arrays.asList(1), ids(delete));
+	}
+
+	public void testMaxAgeAndFirstMatchWins() {
+		List<Download> downloads = Arrays.asList(download(1, "nightly-1.zip", 40),
+				download(2, "nightly-2.zip", 10), download(3, "release-1.zip", 400));
+		List<Download> delete = RetentionRule.select(downloads, Arrays.asList(
+				rule("release-*", 0, 0), rule("*", 0, 30)), NOW);
+		assertEquals(Arrays.asList(1), ids(delete));
+	}
+}
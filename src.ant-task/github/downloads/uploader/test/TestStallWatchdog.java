@@ -0,0 +1,82 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.HedgedCall;
+import github.downloads.uploader.ant.LatencyTracker;
+import github.downloads.uploader.ant.StallWatchdog;
+import github.downloads.uploader.ant.TransferMonitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TestStallWatchdog extends TestCase {
+
+	public void testStalledTransferAborted() throws Exception {
+		TransferMonitor monitor = new TransferMonitor(new ByteArrayInputStream(
+				new byte[1000]), 1000);
+		ScheduledFuture<?> watch = StallWatchdog.watch(monitor, 1000, 200,
+				null);
+		try {
+			monitor.read(new byte[10]);
+			Thread.sleep(600);
+			assertTrue(monitor.isAborted());
+			monitor.read();
+			fail();
+		} catch (InterruptedIOException e) {
+			// expected
+		} finally {
+			watch.cancel(false);
+		}
+	}
+
+	public void testProgressingTransferNotAborted() throws Exception {
+		TransferMonitor monitor = new TransferMonitor(new ByteArrayInputStream(
+				new byte[1000]), 1000);
+		ScheduledFuture<?> watch = StallWatchdog.watch(monitor, 10, 200, null);
+		try {
+			for (int i = 0; i < 12; i++) {
+				monitor.read(new byte[10]);
+				Thread.sleep(50);
+			}
+			assertFalse(monitor.isAborted());
+		} finally {
+			watch.cancel(false);
+		}
+	}
+
+	public void testHedgedCall() throws Exception {
+		LatencyTracker tracker = LatencyTracker.get("test");
+		for (int i = 0; i < 10; i++)
+			tracker.record(10);
+		assertEquals(10, tracker.getPercentile(95));
+
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicInteger hedges = new AtomicInteger();
+		String result = HedgedCall.call(new Callable<String>() {
+
+			public String call() throws IOException {
+				// First request hangs, the duplicate answers at once
+				if (calls.incrementAndGet() == 1)
+					try {
+						Thread.sleep(5000);
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				return "listing";
+			}
+		}, tracker, new Runnable() {
+
+			public void run() {
+				hedges.incrementAndGet();
+			}
+		});
+		assertEquals("listing", result);
+		assertEquals(2, calls.get());
+		assertEquals(1, hedges.get());
+	}
+}
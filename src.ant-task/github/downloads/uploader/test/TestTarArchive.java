@@ -0,0 +1,63 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.TarArchive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestTarArchive extends TestCase {
+
+	private File createFile(File dir, String name, int size) throws IOException {
+		File file = new File(dir, name);
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			for (int i = 0; i < size; i++)
+				out.write('a' + i % 26);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	public void testLength() throws IOException {
+		File dir = File.createTempFile("tar", "");
+		dir.delete();
+		dir.mkdirs();
+		String longDir = "";
+		for (int i = 0; i < 12; i++)
+			longDir += "directory" + i + "/";
+		String longName = "";
+		for (int i = 0; i < 15; i++)
+			longName += "name" + i;
+
+		List<TarArchive.Entry> entries = new ArrayList<TarArchive.Entry>();
+		for (String name : new String[] { "empty.txt", "one.txt",
+				"block.log", longDir + "nested.txt", longName + ".txt" }) {
+			int size = name.equals("empty.txt") ? 0
+					: name.equals("block.log") ? 512 : 700;
+			entries.add(new TarArchive.Entry(name, createFile(dir, name, size)));
+		}
+		TarArchive archive = new TarArchive(entries, "INDEX");
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		InputStream in = archive.openStream();
+		byte[] buffer = new byte[1000];
+		for (int read; (read = in.read(buffer)) != -1;)
+			content.write(buffer, 0, read);
+		in.close();
+
+		assertEquals(archive.getLength(), content.size());
+		assertEquals(0, content.size() % 512);
+		String index = new String(content.toByteArray(), 512, 200, "UTF-8");
+		assertTrue(index, index.startsWith("0\t"));
+		assertTrue(index, index.contains("\tempty.txt\n700\t"));
+	}
+}
@@ -0,0 +1,122 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.TeeInputStreams;
+import github.downloads.uploader.ant.UploadSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TestTeeInputStreams extends TestCase {
+
+	public void testConcurrentReaders() throws Exception {
+		final byte[] content = new byte[10 * 1024 * 1024 + 17];
+		new Random(3).nextBytes(content);
+		final AtomicInteger reads = new AtomicInteger();
+		InputStream source = new ByteArrayInputStream(content) {
+
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				int read = super.read(b, off, len);
+				if (read > 0)
+					reads.addAndGet(read);
+				return read;
+			}
+		};
+		final TeeInputStreams tee = new TeeInputStreams(source, 3);
+		final byte[][] results = new byte[3][];
+		final IOException[] failures = new IOException[3];
+		Thread[] threads = new Thread[3];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+
+				public void run() {
+					try {
+						InputStream in = tee.get(index);
+						byte[] result = new byte[content.length];
+						int length = 0;
+						byte[] buffer = new byte[1000 + index * 3000];
+						for (int read; (read = in.read(buffer)) != -1;) {
+							System.arraycopy(buffer, 0, result, length, read);
+							length += read;
+						}
+						in.close();
+						results[index] = result;
+					} catch (IOException e) {
+						failures[index] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		for (int i = 0; i < threads.length; i++) {
+			assertNull(failures[i]);
+			assertTrue(Arrays.equals(content, results[i]));
+		}
+		assertEquals(content.length, reads.get());
+	}
+
+	public void testClosedStreamDoesNotBlock() throws IOException {
+		TeeInputStreams tee = new TeeInputStreams(new ByteArrayInputStream(
+				new byte[20 * 1024 * 1024]), 2);
+		tee.get(1).close();
+		InputStream in = tee.get(0);
+		long total = 0;
+		byte[] buffer = new byte[8192];
+		for (int read; (read = in.read(buffer)) != -1;)
+			total += read;
+		assertEquals(20 * 1024 * 1024, total);
+	}
+
+	public void testStalledStreamIsDetached() throws IOException {
+		final byte[] content = new byte[10 * 1024 * 1024 + 17];
+		new Random(7).nextBytes(content);
+		UploadSource source = new UploadSource() {
+
+			public long getLength() {
+				return content.length;
+			}
+
+			public InputStream openStream() {
+				return new ByteArrayInputStream(content);
+			}
+		};
+		TeeInputStreams tee = new TeeInputStreams(source.openStream(), 2,
+				source, 200);
+		InputStream stalled = tee.get(1);
+		byte[] buffer = new byte[5000];
+		assertEquals(5000, stalled.read(buffer));
+
+		// Never waits for the stalled stream longer than the lag
+		long start = System.nanoTime();
+		byte[] result = new byte[content.length];
+		int length = 0;
+		InputStream in = tee.get(0);
+		for (int read; (read = in.read(buffer)) != -1;) {
+			System.arraycopy(buffer, 0, result, length, read);
+			length += read;
+		}
+		in.close();
+		assertTrue(Arrays.equals(content, result));
+		assertTrue((System.nanoTime() - start) / 1000000 < 2000);
+
+		// The detached stream carries on from where it was
+		System.arraycopy(content, 0, result, 0, 5000);
+		length = 5000;
+		for (int read; (read = stalled.read(buffer)) != -1;) {
+			System.arraycopy(buffer, 0, result, length, read);
+			length += read;
+		}
+		stalled.close();
+		assertEquals(content.length, length);
+		assertTrue(Arrays.equals(content, result));
+	}
+}
@@ -0,0 +1,52 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.BandwidthLimiter;
+import github.downloads.uploader.ant.ThrottledInputStream;
+import github.downloads.uploader.ant.TokenBucket;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+public class TestTokenBucket extends TestCase {
+
+	public void testUnlimited() throws IOException {
+		TokenBucket bucket = new TokenBucket(0);
+		long start = System.nanoTime();
+		bucket.acquire(Long.MAX_VALUE / 2);
+		assertTrue(System.nanoTime() - start < 100000000L);
+	}
+
+	public void testThrottledRead() throws IOException {
+		// Burst of 10000 bytes is free, the next 5000 take half a second
+		TokenBucket bucket = new TokenBucket(10000);
+		InputStream in = new ThrottledInputStream(new ByteArrayInputStream(
+				new byte[15000]), bucket);
+		byte[] buffer = new byte[4096];
+		long start = System.nanoTime();
+		int total = 0;
+		for (int read; (read = in.read(buffer)) != -1;)
+			total += read;
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		assertEquals(15000, total);
+		assertTrue("Took " + elapsed + "ms", elapsed >= 400 && elapsed < 2000);
+	}
+
+	public void testNarrowingLeavesJvmLimits() {
+		BandwidthLimiter.configure(0, 20000);
+		try {
+			TokenBucket task = new TokenBucket(10000);
+			TokenBucket[] buckets = BandwidthLimiter.getBuckets("owner/repo",
+					task, new TokenBucket(0), null);
+			assertEquals(2, buckets.length);
+			assertSame(BandwidthLimiter.getRepository("owner/repo"), buckets[0]);
+			assertSame(task, buckets[1]);
+			assertFalse(BandwidthLimiter.getGlobal().isLimited());
+			assertEquals(20000, BandwidthLimiter.getRepositoryRate());
+		} finally {
+			BandwidthLimiter.configure(0, 0);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.DigestUtils;
+import github.downloads.uploader.ant.TeeInputStreams;
+import github.downloads.uploader.ant.UploadDigest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestUploadDigest extends TestCase {
+
+	public void testSharedByAllStreams() throws IOException {
+		byte[] content = new byte[200 * 1024 + 3];
+		new Random(5).nextBytes(content);
+		String expected = DigestUtils.md5(new ByteArrayInputStream(content));
+
+		UploadDigest digest = new UploadDigest(content.length, null);
+		TeeInputStreams tee = new TeeInputStreams(
+				digest.wrap(new ByteArrayInputStream(content)), 2);
+		InputStream first = tee.get(0);
+		InputStream second = tee.get(1);
+		byte[] buffer = new byte[content.length];
+		int read = 0;
+		while (read < buffer.length)
+			read += first.read(buffer, read, buffer.length - read);
+		assertEquals(expected, digest.get());
+		read = 0;
+		while (read < buffer.length)
+			read += second.read(buffer, read, buffer.length - read);
+		assertEquals(expected, digest.get());
+	}
+
+	public void testCompleteAtLength() throws IOException {
+		byte[] content = new byte[1000];
+		UploadDigest digest = new UploadDigest(content.length, null);
+		InputStream in = digest.wrap(new ByteArrayInputStream(content));
+		assertEquals(999, in.read(new byte[999]));
+		assertNull(digest.get());
+		// Uploads stop at the declared size without reading the end
+		assertEquals(0, in.read());
+		assertEquals(DigestUtils.md5(new ByteArrayInputStream(content)),
+				digest.get());
+	}
+
+	public void testTruncated() throws IOException {
+		UploadDigest digest = new UploadDigest(1000, null);
+		InputStream in = digest.wrap(new ByteArrayInputStream(new byte[10]));
+		while (in.read(new byte[100]) != -1)
+			;
+		assertNull(digest.get());
+	}
+
+	public void testKnown() {
+		InputStream in = new ByteArrayInputStream(new byte[10]);
+		UploadDigest digest = new UploadDigest(10, "abc");
+		assertSame(in, digest.wrap(in));
+		assertEquals("abc", digest.get());
+	}
+}
@@ -0,0 +1,70 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.GithubDownloadUploaderTask;
+import github.downloads.uploader.ant.UploadOrder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+public class TestUploadOrder extends TestCase {
+
+	private File createFile(String name, int size) throws IOException {
+		File file = new File(System.getProperty("java.io.tmpdir"), name);
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[size]);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	public void testOrder() throws IOException {
+		File small = createFile("order-small.txt", 1);
+		File large = createFile("order-large.zip", 100);
+		File medium = createFile("order-medium.txt", 10);
+		List<File> files = Arrays.asList(small, large, medium);
+
+		assertEquals(files, UploadOrder.DISCOVERY.sort(files, null));
+		assertEquals(Arrays.asList(large, medium, small),
+				UploadOrder.LARGEST.sort(files, null));
+		assertEquals(Arrays.asList(small, medium, large),
+				UploadOrder.SMALLEST.sort(files, null));
+		assertEquals(Arrays.asList(medium, small, large),
+				UploadOrder.LARGEST.sort(files, new String[] { "*.txt" }));
+		assertEquals(Arrays.asList(large, small, medium),
+				UploadOrder.DISCOVERY.sort(files, new String[] { "*.zip" }));
+	}
+
+	public void testFromString() {
+		assertSame(UploadOrder.DISCOVERY, UploadOrder.fromString(null));
+		assertSame(UploadOrder.LARGEST, UploadOrder.fromString("Largest"));
+		try {
+			UploadOrder.fromString("random");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testOrderAttributeInTurkishLocale() {
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			GithubDownloadUploaderTask task = new GithubDownloadUploaderTask();
+			task.setOrder("discovery");
+			assertEquals("discovery", task.getOrder());
+			task.setOrder(task.getOrder());
+			assertEquals("discovery", task.getOrder());
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package github.downloads.uploader.test;
+
+import github.downloads.uploader.ant.GithubDownloadUploaderTask;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Project;
+
+public class TestVerify extends TestCase {
+
+	private File dir;
+
+	private FakeGithubServer server;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("verify", "");
+		dir.delete();
+		dir.mkdirs();
+		server = new FakeGithubServer(0);
+	}
+
+	@Override
+	protected void tearDown() {
+		server.stop();
+		delete(dir);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+	public void testTruncatedUploadIsRepeatedAndRecorded() throws IOException {
+		File file = new File(dir, "app.zip");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[1000]);
+		out.close();
+		File state = new File(dir, "state");
+
+		GithubDownloadUploaderTask task = new GithubDownloadUploaderTask() {
+
+			@Override
+			public void info(String message) {
+			}
+		};
+		task.setProject(new Project());
+		task.setHost(server.getHost());
+		task.setOwner("owner");
+		task.setRepository("repo");
+		task.setUsername("user");
+		task.setPassword("password");
+		task.setStateDir(state);
+		task.setSkipUnchanged(true);
+		task.setVerify(true);
+		task.setFiles(new File[] { file });
+		server.setTruncations(1);
+		task.execute();
+
+		assertEquals(2, server.getRequests("POST"));
+		assertEquals(2, server.getRequests("STORE"));
+		assertEquals(1, server.getRequests("DELETE"));
+		assertEquals(2, server.getRequests("HEAD"));
+
+		Properties recorded = new Properties();
+		for (File record : state.listFiles()) {
+			if (record.getName().equals("throughput.properties"))
+				continue;
+			InputStream in = new FileInputStream(record);
+			try {
+				recorded.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		// The second download, uploaded after the first failed verification
+		assertTrue(recorded.getProperty("app.zip"),
+				recorded.getProperty("app.zip").startsWith("2 1000 "));
+	}
+}
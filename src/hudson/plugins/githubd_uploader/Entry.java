@@ -36,12 +36,20 @@ public final class Entry implements Describable<Entry> {
      */
     public final String sourceFile;
 
+    /**
+     * Name of a tar archive download to pack all matched files into.
+     * <p>
+     * May contain macro. Files are uploaded one by one if empty.
+     */
+    public final String bundle;
+
     @DataBoundConstructor
-    public Entry(String owner, String repository, String description, String sourceFile) {
+    public Entry(String owner, String repository, String description, String sourceFile, String bundle) {
         this.owner = owner;
         this.repository = repository;
         this.description = description;
         this.sourceFile = sourceFile;
+        this.bundle = bundle;
     }
 
 
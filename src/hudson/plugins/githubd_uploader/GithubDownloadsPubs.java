@@ -1,48 +1,147 @@
 package hudson.plugins.githubd_uploader;
 
+import github.downloads.uploader.ant.BandwidthLimiter;
 import github.downloads.uploader.ant.GithubDownloadUploaderTask;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Util;
+import hudson.matrix.MatrixAggregatable;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
 import hudson.model.BuildListener;
+import hudson.model.InvisibleAction;
 import hudson.model.Result;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Fingerprinter.FingerprintAction;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
 
 /**
  * {@link Publisher} that uploads files to java.net documents and files section.
  *
  * @author Kohsuke Kawaguchi
  */
-public class GithubDownloadsPubs extends Recorder {
+public class GithubDownloadsPubs extends Recorder implements MatrixAggregatable {
 
 	private final String username;
 	private final String password;
     private final List<Entry> entries;
 
+    /**
+     * Skip files identical to the download uploaded by an earlier build.
+     */
+    private final boolean skipUnchanged;
+
+    /**
+     * Upload the files of all matrix configurations once from the matrix build.
+     */
+    private final boolean aggregate;
+
+    /**
+     * Keep files that failed to upload for the next build and retry them in the background.
+     */
+    private final boolean outbox;
+
+    /**
+     * Concurrent uploads when publishing the files of all configurations.
+     */
+    static final int AGGREGATE_THREADS = 4;
+
+    /**
+     * Background retries of a failed upload, the first after a minute and doubling after that.
+     */
+    static final int REPLAY_ATTEMPTS = 5;
+
+    /**
+     * Files a matrix configuration leaves for the matrix build to upload.
+     * The manifest is only needed until the configuration ends, so it is
+     * not saved with the build record.
+     */
+    public static final class ManifestAction extends InvisibleAction {
+        final transient WorkspaceManifest.Result manifest;
+
+        ManifestAction(WorkspaceManifest.Result manifest) {
+            this.manifest = manifest;
+        }
+    }
+
     @DataBoundConstructor
-    public GithubDownloadsPubs(String username, String password, List<Entry> entries) {
+    public GithubDownloadsPubs(String username, String password, List<Entry> entries, boolean skipUnchanged, boolean aggregate, boolean outbox) {
         this.username = username;
 		this.password = password;
 		this.entries = entries;
+		this.skipUnchanged = skipUnchanged;
+		this.aggregate = aggregate;
+		this.outbox = outbox;
     }
 
     public List<Entry> getEntries() {
         return entries;
     }
 
+    /**
+     * Creates uploader task publishing to the repository of given entry.
+     */
+    GithubDownloadUploaderTask createTask(Entry e) {
+        GithubDownloadUploaderTask t = new GithubDownloadUploaderTask();
+        t.setDryRun(false);
+        t.setOverwrite(true);
+        t.setDescription(e.description);
+        t.setOwner(e.owner);
+        t.setRepository(e.repository);
+        t.setUsername(username);
+        t.setPassword(password);
+        t.setSkipUnchanged(skipUnchanged);
+        if (outbox) {
+            // The master outlives the build, so failed uploads are replayed in the background
+            t.setOutbox(true);
+            t.setReplayAttempts(REPLAY_ATTEMPTS);
+        }
+        t.setProgress(5);
+        return t;
+    }
+
+    /**
+     * Starts listing the existing downloads of every entry in the background,
+     * for the publisher of the build with the given prefetch scope to use.
+     */
+    void prefetch(String scope, PrintStream logger) {
+        if (entries == null)
+            return;
+        for (Entry e : entries) {
+            try {
+                GithubDownloadUploaderTask t = createTask(e);
+                t.setPrefetchScope(scope);
+                t.prefetch();
+            } catch (RuntimeException x) {
+                // The publisher lists the downloads itself and reports the problem
+                logger.println("Could not prefetch downloads of "
+                        + e.owner + "/" + e.repository + ": " + x.getMessage());
+            }
+        }
+    }
+
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.BUILD;
     }
@@ -56,37 +155,35 @@ public class GithubDownloadsPubs extends Recorder {
         try {
             EnvVars envVars = build.getEnvironment(listener);
 
-            for (Entry e : entries) {
+            String[] patterns = new String[entries.size()];
+            for (int i = 0; i < patterns.length; i++) {
+                Entry e = entries.get(i);
                 if(e.sourceFile.trim().length()==0) {
                     listener.getLogger().println("Configuration error: no file is specified for upload");
                     build.setResult(Result.FAILURE);
                     return true;
                 }
+                patterns[i] = Util.replaceMacro(e.sourceFile, envVars);
+            }
 
-                listener.getLogger().println("Uploading "+e.sourceFile+" to " + "https://github.com/" + e.owner + "/" + e.repository + "/downloads");
-
-                String expanded = Util.replaceMacro(e.sourceFile, envVars);
-                FilePath[] src = build.getWorkspace().list(expanded);
-                if (src.length == 0) {
-                    throw new IOException("No such file exists: "+ expanded);
-                }
+            // Expand, stat and hash all entries on the node in one round trip
+            Map<String, String> fingerprints = skipUnchanged ? getFingerprints(build) : Collections.<String, String>emptyMap();
+            if (skipUnchanged && fingerprints.isEmpty())
+                listener.getLogger().println("No fingerprints were recorded before this publisher, so every file is hashed on the node;"
+                        + " add \"Record fingerprints of files to track usage\" or archive with fingerprints ahead of it to reuse them");
+            WorkspaceManifest.Result manifest = build.getWorkspace().act(new WorkspaceManifest(patterns, skipUnchanged, fingerprints));
+            if (skipUnchanged)
+                listener.getLogger().println("Hashed " + manifest.getHashed() + " files without a fingerprint in this build");
 
-                GithubDownloadUploaderTask t = new GithubDownloadUploaderTask();
-        		t.setDryRun(false);
-        		t.setOverwrite(true);
-        		t.setDescription(e.description);
-        		t.setOwner(e.owner);
-        		t.setRepository(e.repository);
-        		t.setUsername(username);
-        		t.setPassword(password);                
-        		File[] ff = new File[src.length];
-        		for (int i = 0; i < ff.length; i++) {
-        			FilePath s = src[i];
-                	ff[i] = new File(s.getRemote());
-                }
-        		t.setFiles(ff);
-        		t.execute();
+            if (aggregate && build instanceof MatrixRun) {
+                // The parent build publishes the files of all configurations at once
+                build.addAction(new ManifestAction(manifest));
+                listener.getLogger().println("Leaving upload of these files to the matrix build");
+                return true;
             }
+
+            publish(build, envVars, listener, Collections.singletonList(manifest),
+                    new File(build.getWorkspace().getRemote()), 1);
         } catch (IOException e) {
             e.printStackTrace(listener.error("Failed to upload files"));
             build.setResult(Result.FAILURE);
@@ -95,8 +192,209 @@ public class GithubDownloadsPubs extends Recorder {
         return true;
     }
 
+    /**
+     * Uploads the files matched by each entry in the given manifests with one
+     * task per entry, so each repository is listed and overwritten once.
+     */
+    void publish(AbstractBuild<?, ?> build, EnvVars envVars, BuildListener listener,
+            List<WorkspaceManifest.Result> manifests, File baseDir, int threads) throws IOException {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            listener.getLogger().println("Uploading "+e.sourceFile+" to " + "https://github.com/" + e.owner + "/" + e.repository + "/downloads");
+
+            // Downloads are named after the file, except in a bundle
+            String bundle = Util.fixEmptyAndTrim(e.bundle);
+            Map<String, WorkspaceManifest.Item> src = new LinkedHashMap<String, WorkspaceManifest.Item>();
+            for (WorkspaceManifest.Result manifest : manifests)
+                for (WorkspaceManifest.Item s : manifest.get(i)) {
+                    WorkspaceManifest.Item previous = src.put(bundle != null ? s.path : new File(s.path).getName(), s);
+                    if (previous != null)
+                        throw new IOException("Both " + previous.path + " and " + s.path
+                                + " would be uploaded as " + new File(s.path).getName()
+                                + ", give them different names or upload them in a bundle");
+                }
+            if (src.isEmpty()) {
+                throw new IOException("No such file exists: "+ Util.replaceMacro(e.sourceFile, envVars));
+            }
+
+            GithubDownloadUploaderTask t = createTask(e);
+            File[] ff = new File[src.size()];
+            Map<File, String> digests = new HashMap<File, String>();
+            Map<File, Long> sizes = new HashMap<File, Long>();
+            int j = 0;
+            for (WorkspaceManifest.Item s : src.values()) {
+                ff[j] = new File(s.path);
+                if (s.md5 != null)
+                    digests.put(ff[j], s.md5);
+                // Read on the node already, so the task doesn't stat the files again
+                sizes.put(ff[j], s.size);
+                j++;
+            }
+            t.setFiles(ff);
+            t.setDigests(digests);
+            t.setSizes(sizes);
+            t.setPrefetchScope(getPrefetchScope(build));
+            t.setThreads(threads);
+            t.setProgressStream(listener.getLogger());
+            if (bundle != null) {
+                t.setBundle(Util.replaceMacro(bundle, envVars));
+                t.setBaseDir(baseDir);
+            }
+            t.execute();
+        }
+    }
+
+    /**
+     * Collects the manifests of the configurations and publishes them from the
+     * matrix build when aggregation is enabled. The files of each configuration
+     * are copied to the master as it ends, since it may have run on an agent.
+     */
+    public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+        if (!aggregate)
+            return null;
+        final File staging = new File(build.getRootDir(), "github-downloads");
+        return new MatrixAggregator(build, launcher, listener) {
+            private final List<WorkspaceManifest.Result> manifests = new ArrayList<WorkspaceManifest.Result>();
+
+            @Override
+            public boolean startBuild() throws InterruptedException, IOException {
+                // Configurations leave the listing to the matrix build, which uploads
+                if (build.getProject().getBuildWrappersList().get(GithubDownloadsWarmup.class) != null)
+                    prefetch(getPrefetchScope(build), listener.getLogger());
+                return true;
+            }
+
+            @Override
+            public boolean endRun(MatrixRun run) throws InterruptedException {
+                ManifestAction action = run.getAction(ManifestAction.class);
+                if (action == null)
+                    return true;
+                try {
+                    manifests.add(copyToMaster(run, action.manifest, staging));
+                } catch (IOException e) {
+                    e.printStackTrace(listener.error("Failed to copy files of " + run.getFullDisplayName()));
+                    build.setResult(Result.FAILURE);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean endBuild() throws InterruptedException {
+                try {
+                    if (build.getResult() == Result.FAILURE) {
+                        listener.getLogger().println("Not uploading files of the configurations, the matrix build failed");
+                        return true;
+                    }
+                    if (manifests.isEmpty()) {
+                        listener.getLogger().println("No configuration left files to upload");
+                        return true;
+                    }
+                    // Copies are laid out like the configurations below the matrix workspace
+                    publish(build, build.getEnvironment(listener), listener, manifests, staging, AGGREGATE_THREADS);
+                } catch (IOException e) {
+                    e.printStackTrace(listener.error("Failed to upload files"));
+                    build.setResult(Result.FAILURE);
+                } finally {
+                    // The outbox may still replay the copies, they go with the build record then
+                    if (!outbox)
+                        try {
+                            Util.deleteRecursive(staging);
+                        } catch (IOException e) {
+                            listener.getLogger().println("Could not delete " + staging + ": " + e.getMessage());
+                        }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Copies the files in the manifest of a configuration from its workspace,
+     * possibly on an agent, to the given directory on the master, below the
+     * path of the combination.
+     *
+     * @return manifest of the copies
+     */
+    static WorkspaceManifest.Result copyToMaster(MatrixRun run, WorkspaceManifest.Result manifest, File dir)
+            throws IOException, InterruptedException {
+        if (manifest == null)
+            throw new IOException("Files of " + run.getFullDisplayName()
+                    + " were not kept across a restart of Jenkins, build again to upload them");
+        FilePath workspace = run.getWorkspace();
+        if (workspace == null)
+            throw new IOException("No workspace for " + run.getFullDisplayName());
+        String root = workspace.getRemote();
+        File target = new File(dir, run.getParent().getCombination().toString('/', '='));
+        List<List<WorkspaceManifest.Item>> copies = new ArrayList<List<WorkspaceManifest.Item>>();
+        for (int i = 0; i < manifest.size(); i++) {
+            List<WorkspaceManifest.Item> copied = new ArrayList<WorkspaceManifest.Item>();
+            for (WorkspaceManifest.Item item : manifest.get(i)) {
+                String relative = item.path.startsWith(root) ? item.path.substring(root.length()) : item.path;
+                File copy = new File(target, relative.replace('\\', '/'));
+                new FilePath(workspace.getChannel(), item.path).copyTo(new FilePath(copy));
+                copied.add(new WorkspaceManifest.Item(copy.getAbsolutePath(), item.size, item.md5));
+            }
+            copies.add(copied);
+        }
+        return new WorkspaceManifest.Result(copies, manifest.getHashed());
+    }
+
+    /**
+     * Gets the scope of listings prefetched for the given build, so other builds never use them.
+     */
+    static String getPrefetchScope(AbstractBuild<?, ?> build) {
+        return build.getProject().getFullName() + "#" + build.getNumber();
+    }
+
+    /**
+     * Gets MD5 fingerprints recorded for this build by path relative to the workspace,
+     * so change detection doesn't read those files again.
+     */
+    static Map<String, String> getFingerprints(AbstractBuild<?, ?> build) {
+        Map<String, String> fingerprints = new HashMap<String, String>();
+        for (FingerprintAction action : build.getActions(FingerprintAction.class))
+            fingerprints.putAll(action.getRecords());
+        return fingerprints;
+    }
+
     @Extension
     public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+        /**
+         * Upload limit in kilobytes per second shared by all builds, 0 for unlimited.
+         */
+        private int bandwidth;
+
+        /**
+         * Upload limit in kilobytes per second for each repository, 0 for unlimited.
+         */
+        private int repositoryBandwidth;
+
+        public DescriptorImpl() {
+            load();
+            applyBandwidth();
+        }
+
+        private void applyBandwidth() {
+            BandwidthLimiter.configure(bandwidth * 1024L, repositoryBandwidth * 1024L);
+        }
+
+        @Override
+        public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+            bandwidth = json.optInt("bandwidth", 0);
+            repositoryBandwidth = json.optInt("repositoryBandwidth", 0);
+            save();
+            applyBandwidth();
+            return true;
+        }
+
+        public int getBandwidth() {
+            return bandwidth;
+        }
+
+        public int getRepositoryBandwidth() {
+            return repositoryBandwidth;
+        }
+
         public String getDisplayName() {
             return "Github publisher to downloads section";
         }
@@ -113,4 +411,16 @@ public class GithubDownloadsPubs extends Recorder {
 	public String getPassword() {
 		return password;
 	}
+
+	public boolean isSkipUnchanged() {
+		return skipUnchanged;
+	}
+
+	public boolean isAggregate() {
+		return aggregate;
+	}
+
+	public boolean isOutbox() {
+		return outbox;
+	}
 }
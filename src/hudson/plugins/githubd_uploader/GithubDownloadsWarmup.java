@@ -0,0 +1,57 @@
+package hudson.plugins.githubd_uploader;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.BuildListener;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.tasks.BuildWrapper;
+import hudson.tasks.BuildWrapperDescriptor;
+
+import java.io.IOException;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * {@link BuildWrapper} that connects to github and lists the existing downloads
+ * of every {@link Entry} of the project's {@link GithubDownloadsPubs} at build start,
+ * in the background, so the publisher finds the listing ready and starts uploading
+ * right away. Only the publisher of the same build uses the listing. When the
+ * publisher aggregates matrix configurations, the matrix build prefetches once
+ * for its upload instead of each configuration.
+ *
+ * @author huksley
+ */
+public class GithubDownloadsWarmup extends BuildWrapper {
+
+    @DataBoundConstructor
+    public GithubDownloadsWarmup() {
+    }
+
+    @Override
+    public Environment setUp(AbstractBuild build, Launcher launcher, BuildListener listener)
+            throws IOException, InterruptedException {
+        GithubDownloadsPubs publisher = (GithubDownloadsPubs) build.getProject()
+                .getPublishersList().get(GithubDownloadsPubs.class);
+        if (publisher != null && build instanceof MatrixRun && publisher.isAggregate())
+            listener.getLogger().println("Leaving the listing of downloads to the matrix build");
+        else if (publisher != null && !(build instanceof MatrixBuild))
+            // A matrix build only uploads through its aggregator, which prefetches itself
+            publisher.prefetch(GithubDownloadsPubs.getPrefetchScope(build), listener.getLogger());
+        return new Environment() {
+        };
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BuildWrapperDescriptor {
+        public String getDisplayName() {
+            return "Prefetch github downloads listing at build start";
+        }
+
+        public boolean isApplicable(AbstractProject<?, ?> item) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package hudson.plugins.githubd_uploader;
+
+import github.downloads.uploader.ant.DigestUtils;
+import github.downloads.uploader.ant.FlightEvents;
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Expands the source patterns of all entries, stats and hashes the matched
+ * files on the node holding the workspace, returning everything in one
+ * remoting round trip instead of one call per pattern and file. Files with
+ * a known digest, such as a fingerprint recorded earlier in the build, are
+ * not read again.
+ *
+ * @author huksley
+ */
+public class WorkspaceManifest implements FileCallable<WorkspaceManifest.Result> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Stat of one workspace file.
+     */
+    public static final class Item implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Absolute path on the node.
+         */
+        public final String path;
+
+        public final long size;
+
+        /**
+         * Lower case hex MD5, null unless digests were requested.
+         */
+        public final String md5;
+
+        Item(String path, long size, String md5) {
+            this.path = path;
+            this.size = size;
+            this.md5 = md5;
+        }
+    }
+
+    /**
+     * Matched files of each pattern, in pattern order.
+     */
+    public static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<Item>> items;
+
+        private final int hashed;
+
+        Result(List<List<Item>> items, int hashed) {
+            this.items = items;
+            this.hashed = hashed;
+        }
+
+        public List<Item> get(int pattern) {
+            return items.get(pattern);
+        }
+
+        /**
+         * @return number of patterns
+         */
+        public int size() {
+            return items.size();
+        }
+
+        /**
+         * @return number of files read to compute their digest
+         */
+        public int getHashed() {
+            return hashed;
+        }
+    }
+
+    private final String[] patterns;
+
+    private final boolean digests;
+
+    private final Map<String, String> known;
+
+    /**
+     * @param patterns
+     *            Ant style patterns relative to the workspace
+     * @param digests
+     *            whether to compute MD5 digests of matched files
+     */
+    public WorkspaceManifest(String[] patterns, boolean digests) {
+        this(patterns, digests, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @param patterns
+     *            Ant style patterns relative to the workspace
+     * @param digests
+     *            whether to compute MD5 digests of matched files
+     * @param known
+     *            MD5 digests already known by path relative to the workspace,
+     *            using / as separator
+     */
+    public WorkspaceManifest(String[] patterns, boolean digests, Map<String, String> known) {
+        this.patterns = patterns;
+        this.digests = digests;
+        this.known = known;
+    }
+
+    public Result invoke(File ws, VirtualChannel channel) throws IOException, InterruptedException {
+        List<List<Item>> items = new ArrayList<List<Item>>(patterns.length);
+        List<Future<Item>> pending = new ArrayList<Future<Item>>();
+        int hashed = 0;
+        int threads = digests ? Runtime.getRuntime().availableProcessors() : 1;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (String pattern : patterns) {
+                String[] names = Util.createFileSet(ws, pattern).getDirectoryScanner().getIncludedFiles();
+                List<Item> matched = new ArrayList<Item>(names.length);
+                items.add(matched);
+                for (String name : names) {
+                    final File file = new File(ws, name);
+                    final String md5 = digests ? known.get(name.replace(File.separatorChar, '/')) : null;
+                    if (digests && md5 == null)
+                        hashed++;
+                    pending.add(executor.submit(new Callable<Item>() {
+                        public Item call() throws IOException {
+                            String digest = md5;
+                            if (digests && digest == null) {
+                                FlightEvents.Span span = FlightEvents.begin(FlightEvents.HASH);
+                                try {
+                                    digest = DigestUtils.md5(file);
+                                } finally {
+                                    span.end(null, file.getName(), file.length());
+                                }
+                            }
+                            return new Item(file.getAbsolutePath(), file.length(), digest);
+                        }
+                    }));
+                    matched.add(null);
+                }
+            }
+
+            int next = 0;
+            for (List<Item> matched : items)
+                for (int i = 0; i < matched.size(); i++)
+                    matched.set(i, get(pending.get(next++)));
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(items, hashed);
+    }
+
+    private static Item get(Future<Item> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            IOException failure = new IOException("Hashing failed: " + e.getCause().getMessage());
+            failure.initCause(e.getCause());
+            throw failure;
+        }
+    }
+}